@@ -0,0 +1,67 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Measures DecisionTree.buildClassifier for every impurity and pruning mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildBenchmark {
+	
+	@Param({"10000", "100000"})
+	public int numRows;
+	
+	@Param({"10", "50"})
+	public int numAttributes;
+	
+	@Param({"3", "10"})
+	public int cardinality;
+	
+	@Param({"Entropy", "Gini"})
+	public eImpurityMode impurityMode;
+	
+	@Param({"None", "Chi"})
+	public ePruningMode pruningMode;
+	
+	private Instances trainingInstances;
+	
+	
+	@Setup
+	public void setUp() {
+		this.trainingInstances = SyntheticDatasets.generate(this.numRows, this.numAttributes, this.cardinality, 1);
+	}
+	
+	
+	@Benchmark
+	public DecisionTree buildClassifier() throws Exception {
+		// The table index 4 is the 0.05 p-value cutoff.
+		DecisionTree decisionTree = new DecisionTree(this.impurityMode, this.pruningMode, 
+				MainHW2.TABLE_OF_CHISQUARED_PROBABILITIES, 4);
+		
+		decisionTree.buildClassifier(this.trainingInstances);
+		
+		return decisionTree;
+	}
+}
@@ -0,0 +1,75 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Measures classifyInstance and calcAvgError of a trained, unpruned tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifyBenchmark {
+	
+	private static final int NUM_TEST_ROWS = 10000;
+	
+	@Param({"10000", "100000"})
+	public int numRows;
+	
+	@Param({"10", "50"})
+	public int numAttributes;
+	
+	@Param({"3", "10"})
+	public int cardinality;
+	
+	private DecisionTree decisionTree;
+	private Instances testInstances;
+	
+	
+	@Setup
+	public void setUp() throws Exception {
+		Instances trainingInstances = SyntheticDatasets.generate(this.numRows, this.numAttributes, this.cardinality, 1);
+		
+		this.testInstances = SyntheticDatasets.generate(NUM_TEST_ROWS, this.numAttributes, this.cardinality, 2);
+		this.decisionTree = new DecisionTree(eImpurityMode.Entropy, ePruningMode.None);
+		this.decisionTree.buildClassifier(trainingInstances);
+	}
+	
+	
+	@Benchmark
+	@OperationsPerInvocation(NUM_TEST_ROWS)
+	public void classifyInstance(Blackhole blackhole) {
+		for (int i = 0; i < this.testInstances.numInstances(); i++) {
+			blackhole.consume(this.decisionTree.classifyInstance(this.testInstances.instance(i)));
+		}
+	}
+	
+	
+	@Benchmark
+	@OperationsPerInvocation(NUM_TEST_ROWS)
+	public double calcAvgError() {
+		
+		return this.decisionTree.calcAvgError(this.testInstances);
+	}
+}
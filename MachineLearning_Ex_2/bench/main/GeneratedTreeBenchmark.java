@@ -0,0 +1,92 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Measures classifyInstance of a shallow, chi pruned tree, interpreted by 
+ * the compiled tree and compiled by TreeCompiler, over skewed instances 
+ * whose paths are predictable and over uniformly random ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratedTreeBenchmark {
+	
+	private static final int NUM_TRAINING_ROWS = 100000;
+	private static final int NUM_TEST_ROWS = 10000;
+	private static final int NUM_ATTRIBUTES = 10;
+	
+	// The probability of the first value of every attribute, where 0 
+	// gives uniformly random values.
+	@Param({"0", "0.8", "0.95"})
+	public double skew;
+	
+	@Param({"3", "10"})
+	public int cardinality;
+	
+	private DecisionTree decisionTree;
+	private TreePredictor generatedPredictor;
+	private Instances testInstances;
+	
+	
+	@Setup
+	public void setUp() throws Exception {
+		Instances trainingInstances = generate(NUM_TRAINING_ROWS, 1);
+		
+		this.testInstances = generate(NUM_TEST_ROWS, 2);
+		
+		// The table index 5 is the 0.005 p-value cutoff, which keeps the 
+		// tree shallow.
+		this.decisionTree = new DecisionTree(eImpurityMode.Entropy, ePruningMode.Chi, 
+				MainHW2.TABLE_OF_CHISQUARED_PROBABILITIES, 5);
+		this.decisionTree.buildClassifier(trainingInstances);
+		this.generatedPredictor = TreeCompiler.compile(this.decisionTree);
+	}
+	
+	
+	private Instances generate(int numRows, long seed) {
+		
+		return this.skew == 0 ? SyntheticDatasets.generate(numRows, NUM_ATTRIBUTES, this.cardinality, seed) : 
+			SyntheticDatasets.generateSkewed(numRows, NUM_ATTRIBUTES, this.cardinality, this.skew, seed);
+	}
+	
+	
+	@Benchmark
+	@OperationsPerInvocation(NUM_TEST_ROWS)
+	public void interpretedClassifyInstance(Blackhole blackhole) {
+		for (int i = 0; i < this.testInstances.numInstances(); i++) {
+			blackhole.consume(this.decisionTree.classifyInstance(this.testInstances.instance(i)));
+		}
+	}
+	
+	
+	@Benchmark
+	@OperationsPerInvocation(NUM_TEST_ROWS)
+	public void generatedClassifyInstance(Blackhole blackhole) {
+		for (int i = 0; i < this.testInstances.numInstances(); i++) {
+			blackhole.consume(this.generatedPredictor.classifyInstance(this.testInstances.instance(i)));
+		}
+	}
+}
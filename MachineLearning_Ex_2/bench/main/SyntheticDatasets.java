@@ -0,0 +1,125 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+
+/**
+ * Generates nominal datasets for the benchmarks, locally and reproducibly.
+ * The class value depends on the first attributes with some noise, so the 
+ * trees have a realistic mix of deep and shallow branches.
+ */
+final class SyntheticDatasets {
+	
+	private SyntheticDatasets() {
+	}
+	
+	
+	/**
+	 * Generate a nominal dataset with a binary class as the last attribute.
+	 * @param numRows
+	 * @param numAttributes - number of attributes, not including the class
+	 * @param cardinality - number of values of every attribute
+	 * @param seed
+	 * @return instances with the class index set
+	 */
+	static Instances generate(int numRows, int numAttributes, int cardinality, long seed) {
+		Random random = new Random(seed);
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			attributes.add(new Attribute("a" + attributeIndex, values("v", cardinality)));
+		}
+		
+		attributes.add(new Attribute("class", values("c", 2)));
+		
+		Instances instances = new Instances("synthetic", attributes, numRows);
+		instances.setClassIndex(numAttributes);
+		
+		int numRelevant = Math.min(3, numAttributes);
+		
+		for (int i = 0; i < numRows; i++) {
+			double[] values = new double[numAttributes + 1];
+			int relevantSum = 0;
+			
+			for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+				values[attributeIndex] = random.nextInt(cardinality);
+				
+				if (attributeIndex < numRelevant) {
+					relevantSum += (int) values[attributeIndex];
+				}
+			}
+			
+			// The class follows the relevant attributes, and is flipped for 
+			// 10% of the rows.
+			int classValue = relevantSum % 2;
+			
+			if (random.nextDouble() < 0.1) {
+				classValue = 1 - classValue;
+			}
+			
+			values[numAttributes] = classValue;
+			instances.add(new DenseInstance(1.0, values));
+		}
+		
+		return instances;
+	}
+	
+	
+	/**
+	 * Generate a nominal dataset with a binary class as the last attribute, 
+	 * whose attribute values are skewed: the first value of every attribute 
+	 * has the given probability, and the other values share the rest evenly. 
+	 * The class follows the first attributes like in generate, so most 
+	 * instances take the same few paths of a tree.
+	 * @param numRows
+	 * @param numAttributes - number of attributes, not including the class
+	 * @param cardinality - number of values of every attribute
+	 * @param skew - probability of the first value of every attribute
+	 * @param seed
+	 * @return instances with the class index set
+	 */
+	static Instances generateSkewed(int numRows, int numAttributes, int cardinality, double skew, long seed) {
+		Random random = new Random(seed);
+		Instances instances = generate(numRows, numAttributes, cardinality, seed);
+		int numRelevant = Math.min(3, numAttributes);
+		
+		for (int i = 0; i < numRows; i++) {
+			int relevantSum = 0;
+			
+			for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+				int value = random.nextDouble() < skew ? 0 : 1 + random.nextInt(cardinality - 1);
+				instances.instance(i).setValue(attributeIndex, value);
+				
+				if (attributeIndex < numRelevant) {
+					relevantSum += value;
+				}
+			}
+			
+			int classValue = relevantSum % 2;
+			
+			if (random.nextDouble() < 0.1) {
+				classValue = 1 - classValue;
+			}
+			
+			instances.instance(i).setClassValue(classValue);
+		}
+		
+		return instances;
+	}
+	
+	
+	private static ArrayList<String> values(String prefix, int numValues) {
+		ArrayList<String> values = new ArrayList<String>();
+		
+		for (int i = 0; i < numValues; i++) {
+			values.add(prefix + i);
+		}
+		
+		return values;
+	}
+}
@@ -0,0 +1,244 @@
+package main;
+
+
+/**
+ * Bitmap index of an encoded training set, for the bitmap split engine.
+ * Every (attribute, value index) pair and every class value has a bitmap
+ * over the rows, with one bit per row in long words. The rows of a tree
+ * node are a bitmap too, so a contingency table cell is the number of
+ * bits of (node and class and attribute value), counted by popcount a
+ * word at a time, without touching the rows. This pays off while the
+ * node rows are dense in their words, so the sparse nodes are left to
+ * row scans.
+ * The index is built over the positions of the row index array of the
+ * dataset when the index is created, so a view with repeated rows is
+ * indexed with every copy.
+ */
+final class BitmapIndex {
+	final EncodedDataset data;
+	final int numRows;
+	final int numWords;
+	final long[][][] valueBitmaps;     // [attributeIndex][valueIndex][word], null for the class attribute.
+	final long[][] classBitmaps;       // [classIndex][word]
+	final long numCellsPerWord;        // contingency cells of all of the attributes, counted per word.
+	
+	
+	/**
+	 * Constructor that indexes the rows of the given dataset.
+	 * @param data - encoded dataset without weights
+	 */
+	BitmapIndex(EncodedDataset data) {
+		int numAttributes = data.columns.length;
+		long numCells = 0;
+		
+		this.data = data;
+		this.numRows = data.numRows;
+		this.numWords = (this.numRows + 63) >>> 6;
+		this.valueBitmaps = new long[numAttributes][][];
+		this.classBitmaps = new long[data.numClasses][this.numWords];
+		
+		for (int position = 0; position < this.numRows; position++) {
+			this.classBitmaps[data.classColumn[data.rows[position]]][position >>> 6] |= 1L << position;
+		}
+		
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			short[] column = data.columns[attributeIndex];
+			
+			if (column == null) {
+				continue;
+			}
+			
+			long[][] bitmaps = new long[data.numValues[attributeIndex]][this.numWords];
+			
+			for (int position = 0; position < this.numRows; position++) {
+				bitmaps[column[data.rows[position]]][position >>> 6] |= 1L << position;
+			}
+			
+			this.valueBitmaps[attributeIndex] = bitmaps;
+			numCells += bitmaps.length * data.numClasses;
+		}
+		
+		this.numCellsPerWord = numCells;
+	}
+	
+	
+	/**
+	 * Decide whether a node is counted by popcount, which costs a word
+	 * operation per contingency cell and active word, or by scanning its
+	 * rows, which costs a table update per attribute and row. A word
+	 * operation is taken as half of a table update.
+	 * @param numRows - the number of rows of the node
+	 * @param numActiveWords - the number of words of the node bitmap that have any row
+	 * @return true if the node should be counted by popcount
+	 */
+	boolean isDense(int numRows, int numActiveWords) {
+		int numAttributes = this.valueBitmaps.length - 1;
+		
+		return (long) numActiveWords * this.numCellsPerWord <= 2L * numRows * numAttributes;
+	}
+	
+	
+	/**
+	 * @return the class value counts of all of the rows
+	 */
+	int[] countClasses() {
+		int[] classCounts = new int[this.classBitmaps.length];
+		
+		for (int classIndex = 0; classIndex < classCounts.length; classIndex++) {
+			for (long word : this.classBitmaps[classIndex]) {
+				classCounts[classIndex] += Long.bitCount(word);
+			}
+		}
+		
+		return classCounts;
+	}
+	
+	
+	/**
+	 * @return the bitmap of all of the rows
+	 */
+	long[] allRows() {
+		long[] bitmap = new long[this.numWords];
+		
+		for (int word = 0; word < this.numWords; word++) {
+			bitmap[word] = -1L;
+		}
+		
+		if ((this.numRows & 63) != 0) {
+			bitmap[this.numWords - 1] = (1L << this.numRows) - 1;
+		}
+		
+		return bitmap;
+	}
+	
+	
+	/**
+	 * @param bitmap - rows of a node
+	 * @return the words of the bitmap that have any row
+	 */
+	int[] activeWords(long[] bitmap) {
+		int numActiveWords = 0;
+		
+		for (int word = 0; word < bitmap.length; word++) {
+			if (bitmap[word] != 0) {
+				numActiveWords++;
+			}
+		}
+		
+		int[] activeWords = new int[numActiveWords];
+		
+		for (int word = 0, i = 0; word < bitmap.length; word++) {
+			if (bitmap[word] != 0) {
+				activeWords[i++] = word;
+			}
+		}
+		
+		return activeWords;
+	}
+	
+	
+	/**
+	 * Split the rows of a node by class value.
+	 * @param bitmap - rows of a node
+	 * @param activeWords - the words of the bitmap that have any row
+	 * @return the rows of the node of every class value, as compact words:
+	 * word i is the activeWords[i] word of the bitmap.
+	 */
+	long[][] classWords(long[] bitmap, int[] activeWords) {
+		long[][] classWords = new long[this.classBitmaps.length][activeWords.length];
+		
+		for (int classIndex = 0; classIndex < classWords.length; classIndex++) {
+			long[] classBitmap = this.classBitmaps[classIndex];
+			long[] words = classWords[classIndex];
+			
+			for (int i = 0; i < activeWords.length; i++) {
+				words[i] = bitmap[activeWords[i]] & classBitmap[activeWords[i]];
+			}
+		}
+		
+		return classWords;
+	}
+	
+	
+	/**
+	 * Count the contingency table of the attribute over the rows of a
+	 * node, by popcount.
+	 * @param attributeIndex
+	 * @param activeWords - the words of the node bitmap that have any row
+	 * @param classWords - the rows of the node of every class value, by classWords
+	 * @return value index x class value counts
+	 */
+	int[][] countContingencyTable(int attributeIndex, int[] activeWords, long[][] classWords) {
+		long[][] bitmaps = this.valueBitmaps[attributeIndex];
+		int[][] contingencyTable = new int[bitmaps.length][classWords.length];
+		
+		for (int valueIndex = 0; valueIndex < bitmaps.length; valueIndex++) {
+			long[] valueBitmap = bitmaps[valueIndex];
+			
+			for (int classIndex = 0; classIndex < classWords.length; classIndex++) {
+				long[] words = classWords[classIndex];
+				int count = 0;
+				
+				for (int i = 0; i < activeWords.length; i++) {
+					count += Long.bitCount(words[i] & valueBitmap[activeWords[i]]);
+				}
+				
+				contingencyTable[valueIndex][classIndex] = count;
+			}
+		}
+		
+		return contingencyTable;
+	}
+	
+	
+	/**
+	 * Select the rows of a node that have any of the given values of the
+	 * attribute, which is one AND (of an OR of the values) per word.
+	 * @param bitmap - rows of a node
+	 * @param activeWords - the words of the bitmap that have any row
+	 * @param attributeIndex
+	 * @param fromValue - the first value index to select
+	 * @param toValue - the value index after the last one to select
+	 * @return the bitmap of the selected rows
+	 */
+	long[] selectRows(long[] bitmap, int[] activeWords, int attributeIndex, int fromValue, int toValue) {
+		long[][] bitmaps = this.valueBitmaps[attributeIndex];
+		long[] selectedRows = new long[this.numWords];
+		
+		for (int word : activeWords) {
+			long valueWord = 0;
+			
+			for (int valueIndex = fromValue; valueIndex < toValue; valueIndex++) {
+				valueWord |= bitmaps[valueIndex][word];
+			}
+			
+			selectedRows[word] = bitmap[word] & valueWord;
+		}
+		
+		return selectedRows;
+	}
+	
+	
+	/**
+	 * List the dataset rows of a node, for the row scans.
+	 * @param bitmap - rows of a node
+	 * @param activeWords - the words of the bitmap that have any row
+	 * @param numNodeRows - the number of rows of the node
+	 * @return the row indexes of the node rows, in the order of the index
+	 */
+	int[] rows(long[] bitmap, int[] activeWords, int numNodeRows) {
+		int[] rows = new int[numNodeRows];
+		int i = 0;
+		
+		for (int word : activeWords) {
+			long bits = bitmap[word];
+			
+			while (bits != 0) {
+				rows[i++] = this.data.rows[(word << 6) + Long.numberOfTrailingZeros(bits)];
+				bits &= bits - 1;
+			}
+		}
+		
+		return rows;
+	}
+}
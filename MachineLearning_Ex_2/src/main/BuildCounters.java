@@ -0,0 +1,111 @@
+package main;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Mutable counters of a single tree build. The tasks of a parallel build 
+ * update the same counters, so every counter is thread safe, and the 
+ * times are summed over the threads. The counters are updated once per 
+ * node (or per level of the queue build), never per row, and a build 
+ * without counters skips them altogether. The split candidates, which are 
+ * counted for every attribute of every node, are counted by every thread 
+ * into an array of its own, and the arrays are summed once, by snapshot.
+ */
+final class BuildCounters {
+	final LongAdder numNodes = new LongAdder();
+	final LongAdder rowsScanned = new LongAdder();
+	final LongAdder numChiPruned = new LongAdder();
+	final LongAdder scoringNanos = new LongAdder();
+	final LongAdder partitionNanos = new LongAdder();
+	private final AtomicInteger numOpenNodes = new AtomicInteger();
+	private final AtomicInteger peakFrontierSize = new AtomicInteger();
+	private final int numAttributes;
+	private final List<long[]> threadSplitCandidates = new CopyOnWriteArrayList<long[]>();
+	private final ThreadLocal<long[]> splitCandidates;   // split candidates evaluated, per attribute.
+	
+	
+	/**
+	 * Constructor of zero counters.
+	 * @param numAttributes
+	 */
+	BuildCounters(int numAttributes) {
+		this.numAttributes = numAttributes;
+		this.splitCandidates = new ThreadLocal<long[]>() {
+			@Override
+			protected long[] initialValue() {
+				long[] splitCandidates = new long[BuildCounters.this.numAttributes];
+				BuildCounters.this.threadSplitCandidates.add(splitCandidates);
+				
+				return splitCandidates;
+			}
+		};
+	}
+	
+	
+	/**
+	 * Count split candidates of an attribute, in the array of the thread.
+	 * @param attributeIndex
+	 * @param numCandidates
+	 */
+	void countSplitCandidates(int attributeIndex, long numCandidates) {
+		
+		this.splitCandidates.get()[attributeIndex] += numCandidates;
+	}
+	
+	
+	/**
+	 * Count a node whose subtree starts to be built, by the recursive build.
+	 */
+	void openNode() {
+		
+		this.updateFrontier(this.numOpenNodes.incrementAndGet());
+	}
+	
+	
+	/**
+	 * Count a node whose subtree was built, by the recursive build.
+	 */
+	void closeNode() {
+		
+		this.numOpenNodes.decrementAndGet();
+	}
+	
+	
+	/**
+	 * Keep the peak of the number of nodes under construction at the 
+	 * same time (the frontier of the build).
+	 * @param frontierSize
+	 */
+	void updateFrontier(int frontierSize) {
+		int peakFrontierSize = this.peakFrontierSize.get();
+		
+		while (frontierSize > peakFrontierSize 
+				&& !this.peakFrontierSize.compareAndSet(peakFrontierSize, frontierSize)) {
+			peakFrontierSize = this.peakFrontierSize.get();
+		}
+	}
+	
+	
+	/**
+	 * @param elapsedNanos - wall clock time of the build
+	 * @return the statistics of the counters, which are complete once 
+	 * the tasks of the build were joined
+	 */
+	BuildStatistics snapshot(long elapsedNanos) {
+		long[] splitCandidates = new long[this.numAttributes];
+		
+		for (long[] threadSplitCandidates : this.threadSplitCandidates) {
+			for (int attributeIndex = 0; attributeIndex < splitCandidates.length; attributeIndex++) {
+				splitCandidates[attributeIndex] += threadSplitCandidates[attributeIndex];
+			}
+		}
+		
+		return new BuildStatistics(this.numNodes.sum(), splitCandidates, this.rowsScanned.sum(), 
+				this.numChiPruned.sum(), this.scoringNanos.sum(), this.partitionNanos.sum(), 
+				this.peakFrontierSize.get(), elapsedNanos);
+	}
+}
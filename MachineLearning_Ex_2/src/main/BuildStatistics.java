@@ -0,0 +1,108 @@
+package main;
+
+
+/**
+ * Immutable statistics of a tree build: what the build did, and where its 
+ * time went. The scoring time is the time of counting the rows and 
+ * calculating the impurities and gains, and the partition time is the 
+ * time of moving the rows to the children. Both are summed over the 
+ * threads of a parallel build, and since a thread that waits for its 
+ * scoring tasks may run other tasks meanwhile, they are upper bounds there.
+ */
+public final class BuildStatistics {
+	private final long numNodes;
+	private final long[] splitCandidates;   // split candidates evaluated, per attribute.
+	private final long rowsScanned;
+	private final long numChiPruned;
+	private final long scoringNanos;
+	private final long partitionNanos;
+	private final int peakFrontierSize;
+	private final long elapsedNanos;
+	
+	
+	BuildStatistics(long numNodes, long[] splitCandidates, long rowsScanned, long numChiPruned, 
+			long scoringNanos, long partitionNanos, int peakFrontierSize, long elapsedNanos) {
+		this.numNodes = numNodes;
+		this.splitCandidates = splitCandidates;
+		this.rowsScanned = rowsScanned;
+		this.numChiPruned = numChiPruned;
+		this.scoringNanos = scoringNanos;
+		this.partitionNanos = partitionNanos;
+		this.peakFrontierSize = peakFrontierSize;
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	
+	/* gets methods */
+	
+	public long getNumNodes() {
+		return this.numNodes;
+	}
+	
+	/**
+	 * @param attributeIndex
+	 * @return the number of splits by the attribute that were scored. 
+	 * A nominal attribute has one split per node, and a numeric attribute 
+	 * has one split per threshold.
+	 */
+	public long getSplitCandidates(int attributeIndex) {
+		return this.splitCandidates[attributeIndex];
+	}
+	
+	public long getTotalSplitCandidates() {
+		long totalSplitCandidates = 0;
+		
+		for (long splitCandidates : this.splitCandidates) {
+			totalSplitCandidates += splitCandidates;
+		}
+		
+		return totalSplitCandidates;
+	}
+	
+	/**
+	 * @return the number of rows that were read from the columns, by 
+	 * all of the counting passes.
+	 */
+	public long getRowsScanned() {
+		return this.rowsScanned;
+	}
+	
+	/**
+	 * @return the number of nodes that were made leaves by Chi pruning.
+	 */
+	public long getNumChiPruned() {
+		return this.numChiPruned;
+	}
+	
+	public long getScoringNanos() {
+		return this.scoringNanos;
+	}
+	
+	public long getPartitionNanos() {
+		return this.partitionNanos;
+	}
+	
+	/**
+	 * @return the peak number of nodes under construction at the same 
+	 * time: the widest level of a queue build, or the deepest recursion 
+	 * (plus the forked subtrees) of a recursive build.
+	 */
+	public int getPeakFrontierSize() {
+		return this.peakFrontierSize;
+	}
+	
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+	
+	
+	@Override
+	public String toString() {
+		
+		return String.format("nodes %d, split candidates %d, rows scanned %d, chi pruned %d, "
+				+ "scoring %.1f ms, partition %.1f ms, peak frontier %d, elapsed %.1f ms", 
+				this.numNodes, this.getTotalSplitCandidates(), this.rowsScanned, this.numChiPruned, 
+				this.scoringNanos / 1e6, this.partitionNanos / 1e6, this.peakFrontierSize, 
+				this.elapsedNanos / 1e6);
+	}
+}
@@ -0,0 +1,183 @@
+package main;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import weka.core.Statistics;
+
+
+/**
+ * Critical values of the chi square distribution, for any degree of 
+ * freedom and any p-value (the probability of the upper tail). 
+ * The critical values of a p-value are calculated on demand, by bisection 
+ * of the upper tail probability of weka.core.Statistics, and are kept in 
+ * an array that is indexed by the degree of freedom. The array only grows, 
+ * and is replaced (never changed) when it grows, thus after the first 
+ * lookup of a degree of freedom its lookups are a single array read, from 
+ * any thread. The critical values of a column of a table of chi square 
+ * probabilities are shared by every tree of the table.
+ */
+final class ChiSquareQuantiles {
+	// The critical values of every column of a table, by the table itself 
+	// (arrays are equal only to themselves). A table that is not used 
+	// any more is dropped.
+	private static final Map<double[][], ChiSquareQuantiles[]> byTable = 
+			new WeakHashMap<double[][], ChiSquareQuantiles[]>();
+	private static final int MAX_ITERATIONS = 500;
+	private static final double EPSILON = 1e-14;
+	
+	private final double pValue;
+	private volatile double[] criticalValues = new double[0];   // [degOfFreedom], 0 is unused.
+	
+	
+	/**
+	 * Constructor of the critical values of a p-value.
+	 * @param pValue
+	 */
+	private ChiSquareQuantiles(double pValue) {
+		this.pValue = pValue;
+	}
+	
+	
+	/**
+	 * Return new critical values of the given p-value, which are not shared, 
+	 * so any p-value can be asked for without keeping it.
+	 * @param pValue - probability of the upper tail, in (0, 1]
+	 * @return the critical values of the p-value
+	 */
+	static ChiSquareQuantiles forPValue(double pValue) {
+		if (!(pValue > 0 && pValue <= 1)) {
+			throw new IllegalArgumentException("P-value must be in (0, 1]: " + pValue);
+		}
+		
+		return new ChiSquareQuantiles(pValue);
+	}
+	
+	
+	/**
+	 * Return the shared critical values of a column of a table of chi 
+	 * square probabilities. The p-value of the column is the upper tail 
+	 * probability of its first row (one degree of freedom).
+	 * @param tableOfChiProb - critical values by [degOfFreedom - 1][PValueIndex]
+	 * @param PValueIndex - the column
+	 * @return the critical values of the p-value of the column
+	 */
+	static ChiSquareQuantiles forTableColumn(double[][] tableOfChiProb, int PValueIndex) {
+		synchronized (byTable) {
+			ChiSquareQuantiles[] columns = byTable.get(tableOfChiProb);
+			
+			if (columns == null) {
+				columns = new ChiSquareQuantiles[tableOfChiProb[0].length];
+				byTable.put(tableOfChiProb, columns);
+			}
+			
+			if (columns[PValueIndex] == null) {
+				columns[PValueIndex] = forPValue(upperTail(tableOfChiProb[0][PValueIndex], 1));
+			}
+			
+			return columns[PValueIndex];
+		}
+	}
+	
+	
+	double getPValue() {
+		return this.pValue;
+	}
+	
+	
+	/**
+	 * Return the value that a chi square statistic of the given degree of 
+	 * freedom exceeds with a probability of the p-value.
+	 * @param degOfFreedom - positive degree of freedom
+	 * @return critical value
+	 */
+	double criticalValue(int degOfFreedom) {
+		double[] criticalValues = this.criticalValues;
+		
+		if (degOfFreedom < criticalValues.length) {
+			return criticalValues[degOfFreedom];
+		}
+		
+		return this.grow(degOfFreedom)[degOfFreedom];
+	}
+	
+	
+	/**
+	 * Calculate the critical values up to the given degree of freedom.
+	 * @param degOfFreedom
+	 * @return the grown critical values
+	 */
+	private synchronized double[] grow(int degOfFreedom) {
+		if (degOfFreedom < 1) {
+			throw new IllegalArgumentException("Degree of freedom must be positive: " + degOfFreedom);
+		}
+		
+		double[] criticalValues = this.criticalValues;
+		
+		if (degOfFreedom < criticalValues.length) {
+			// Another thread grew them already.
+			return criticalValues;
+		}
+		
+		double[] grownValues = new double[degOfFreedom + 1];
+		System.arraycopy(criticalValues, 0, grownValues, 0, criticalValues.length);
+		
+		for (int i = Math.max(1, criticalValues.length); i <= degOfFreedom; i++) {
+			grownValues[i] = inverseUpperTail(this.pValue, i);
+		}
+		
+		this.criticalValues = grownValues;
+		
+		return grownValues;
+	}
+	
+	
+	/**
+	 * Calculate the probability that a chi square statistic of the given 
+	 * degree of freedom exceeds x.
+	 * @param x
+	 * @param degOfFreedom
+	 * @return the upper tail probability
+	 */
+	static double upperTail(double x, int degOfFreedom) {
+		if (x <= 0) {
+			return 1;
+		}
+		
+		return Statistics.chiSquaredProbability(x, degOfFreedom);
+	}
+	
+	
+	/**
+	 * Find the critical value of a p-value, by bisection of the upper tail 
+	 * probability (which decreases in x).
+	 * @param pValue
+	 * @param degOfFreedom
+	 * @return critical value
+	 */
+	private static double inverseUpperTail(double pValue, int degOfFreedom) {
+		if (pValue >= 1) {
+			return 0;
+		}
+		
+		double low = 0;
+		double high = degOfFreedom;
+		
+		while (upperTail(high, degOfFreedom) > pValue) {
+			low = high;
+			high *= 2;
+		}
+		
+		for (int i = 0; i < MAX_ITERATIONS && high - low > EPSILON * high; i++) {
+			double middle = (low + high) / 2;
+			
+			if (upperTail(middle, degOfFreedom) > pValue) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		
+		return (low + high) / 2;
+	}
+}
@@ -0,0 +1,277 @@
+package main;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import weka.core.Instance;
+
+
+/**
+ * Flattened form of a trained decision tree, for fast classification.
+ * The nodes are numbered in breadth first order (the root is 0), and each
+ * of them is described by a position in primitive arrays. The children of
+ * an inner node are found by direct indexing of its row in the branch
+ * table with the nominal value of the instance, where the last entry of
+ * the row is the branch of the missing values. A numeric node has a
+ * threshold, and its row has the branches of the values up to the
+ * threshold (0), above it (1) and the missing values.
+ * Incremental training patches a leaf by patchLeaf, while other threads
+ * classify. The class counts of a node are never changed once published,
+ * so a thread reads either the old or the new counts of the leaf.
+ */
+final class CompiledTree implements TreePredictor {
+	private static final VarHandle RETURN_VALUES = MethodHandles.arrayElementVarHandle(double[].class);
+	private static final VarHandle CLASS_COUNTS = MethodHandles.arrayElementVarHandle(int[][].class);
+
+	final int[] attributeIndexes;  // attribute of every inner node, -1 for leaves.
+	final double[] thresholds;     // split value of every numeric inner node, NaN for the others.
+	final double[] returnValues;   // return value of every node, patched by incremental training.
+	final int[][] classCounts;     // class value counts of every node, replaced by incremental training.
+	final int[] depths;            // number of edges from the root to every node.
+	final int maxDepth;
+	final int[] branchOffsets;     // start of every inner node row in the branch table.
+	final int[] branchWidths;      // length of every inner node row in the branch table.
+	final int[] branchTable;       // child node of every value index, -1 if there is none.
+
+
+	/**
+	 * Constructor that flattens the tree of the given root.
+	 * @param rootNode
+	 */
+	CompiledTree(Node rootNode) {
+		// List the nodes in breadth first order, without recursion.
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(rootNode);
+
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+
+			if (node.children != null) {
+				nodes.addAll(Arrays.asList(node.children));
+			}
+		}
+
+		int numNodes = nodes.size();
+		this.attributeIndexes = new int[numNodes];
+		this.thresholds = new double[numNodes];
+		this.returnValues = new double[numNodes];
+		this.classCounts = new int[numNodes][];
+		this.depths = new int[numNodes];
+		this.branchOffsets = new int[numNodes];
+		this.branchWidths = new int[numNodes];
+
+		// Give every inner node a row, wide enough for all of its branches.
+		int branchTableSize = 0;
+
+		for (int i = 0; i < numNodes; i++) {
+			Node node = nodes.get(i);
+			this.returnValues[i] = node.returnValue;
+			// The running counts of an incremental leaf are copied, since
+			// they keep changing.
+			this.classCounts[i] = node.statistics != null ? node.classCounts.clone() : node.classCounts;
+			this.thresholds[i] = node.threshold;
+
+			if (node.children == null) {
+				this.attributeIndexes[i] = -1;
+				continue;
+			}
+
+			int maxBranch = -1;
+
+			for (Node childNode : node.children) {
+				if (!Double.isNaN(childNode.branch)) {
+					maxBranch = Math.max(maxBranch, (int) childNode.branch);
+				}
+			}
+
+			this.attributeIndexes[i] = node.attributeIndex;
+			this.branchOffsets[i] = branchTableSize;
+			this.branchWidths[i] = maxBranch + 2;
+			branchTableSize += this.branchWidths[i];
+		}
+
+		this.branchTable = new int[branchTableSize];
+		Arrays.fill(this.branchTable, -1);
+
+		// The children of the nodes follow each other in the breadth first
+		// order, so the next child index is simply counted.
+		int nextChild = 1;
+
+		for (int i = 0; i < numNodes; i++) {
+			Node node = nodes.get(i);
+
+			if (node.children == null) {
+				continue;
+			}
+
+			for (Node childNode : node.children) {
+				int valueIndex = Double.isNaN(childNode.branch) ?
+						this.branchWidths[i] - 1 : (int) childNode.branch;
+
+				this.branchTable[this.branchOffsets[i] + valueIndex] = nextChild;
+				this.depths[nextChild] = this.depths[i] + 1;
+				nextChild++;
+			}
+		}
+		
+		// The deepest node is the last one in breadth first order.
+		this.maxDepth = this.depths[numNodes - 1];
+	}
+
+
+	@Override
+	public double classifyInstance(Instance instance) {
+
+		return this.returnValues[this.findNode(instance)];
+	}
+
+
+	@Override
+	public Prediction predict(Instance instance) {
+		int node = this.findNode(instance);
+
+		return new Prediction(this.returnValues[node], this.depths[node]);
+	}
+
+
+	/**
+	 * Publish the new return value and class counts of a leaf, for the
+	 * threads that classify by this compiled tree. Every entry is replaced
+	 * by a single write, after the contents of the new counts.
+	 * @param node
+	 * @param returnValue
+	 * @param classCounts - counts that are not changed from now on
+	 */
+	void patchLeaf(int node, double returnValue, int[] classCounts) {
+		CLASS_COUNTS.setRelease(this.classCounts, node, classCounts);
+		RETURN_VALUES.setRelease(this.returnValues, node, returnValue);
+	}
+
+
+	/**
+	 * Return the class counts of a node, as the last patchLeaf published them.
+	 * @param node
+	 * @return the class value counts, or null if the node has none
+	 */
+	int[] classCounts(int node) {
+
+		return (int[]) CLASS_COUNTS.getAcquire(this.classCounts, node);
+	}
+
+
+	/**
+	 * Find the node that classifies the instance. The instance goes down
+	 * the tree as long as the current node has a branch for its value.
+	 * @param instance
+	 * @return index of the classifying node
+	 */
+	int findNode(Instance instance) {
+		int node = 0;
+		int attributeIndex = this.attributeIndexes[0];
+
+		while (attributeIndex >= 0) {
+			double value = instance.value(attributeIndex);
+			double threshold = this.thresholds[node];
+			int width = this.branchWidths[node];
+			int valueIndex;
+
+			if (Double.isNaN(value)) {
+				valueIndex = width - 1;
+			} else {
+				// A numeric value goes below (0) or above (1) the threshold.
+				valueIndex = threshold == threshold ? (value <= threshold ? 0 : 1) : (int) value;
+
+				if (valueIndex >= width - 1) {
+					// A value that was never seen by this node.
+					break;
+				}
+			}
+
+			int childNode = this.branchTable[this.branchOffsets[node] + valueIndex];
+
+			if (childNode < 0) {
+				break;
+			}
+
+			node = childNode;
+			attributeIndex = this.attributeIndexes[node];
+		}
+
+		return node;
+	}
+
+
+	/**
+	 * Find the node that classifies a row of an encoded dataset, the same
+	 * way as findNode(Instance). A numeric row value is known only by its
+	 * bin, so the row stops at a numeric node whose threshold falls inside
+	 * the bin (which never happens for the dataset the tree was built from).
+	 * @param data
+	 * @param row
+	 * @return index of the classifying node
+	 */
+	int findNode(EncodedDataset data, int row) {
+		int node = 0;
+		int attributeIndex = this.attributeIndexes[0];
+
+		while (attributeIndex >= 0) {
+			int valueIndex = data.columns[attributeIndex][row];
+			double threshold = this.thresholds[node];
+			int width = this.branchWidths[node];
+
+			if (valueIndex == data.numValues[attributeIndex] - 1) {
+				valueIndex = width - 1;
+			} else {
+				if (threshold == threshold) {
+					// A bin goes below (0) or above (1) the threshold, or
+					// has values on both sides of it (-1).
+					valueIndex = this.compareBin(data.cutPoints[attributeIndex], valueIndex, threshold);
+				}
+
+				if (valueIndex < 0 || valueIndex >= width - 1) {
+					// A value that was never seen by this node.
+					break;
+				}
+			}
+
+			int childNode = this.branchTable[this.branchOffsets[node] + valueIndex];
+
+			if (childNode < 0) {
+				break;
+			}
+
+			node = childNode;
+			attributeIndex = this.attributeIndexes[node];
+		}
+
+		return node;
+	}
+
+
+	/**
+	 * Compare the values of a bin with a threshold.
+	 * @param cutPoints - the cut points of the bins
+	 * @param bin
+	 * @param threshold
+	 * @return 0 if all of the bin values are up to the threshold, 1 if all 
+	 * of them are above it, and -1 if the bin has both.
+	 */
+	private int compareBin(double[] cutPoints, int bin, double threshold) {
+		if (cutPoints == null) {
+			return -1;
+		}
+
+		if (bin < cutPoints.length && cutPoints[bin] <= threshold) {
+			return 0;
+		}
+
+		if (bin > 0 && cutPoints[bin - 1] >= threshold) {
+			return 1;
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,313 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * K-fold cross validation of a grid of decision tree configurations
+ * (impurity mode x pruning mode x p-value), in parallel.
+ * The training set is encoded once, and every fold is a pair of row index
+ * views over it, so no instances are copied. For every impurity mode and
+ * fold, a single unpruned tree is built, and every Chi pruned
+ * configuration is derived from it by prunedView, which is the same tree
+ * that a pruned build would give. Thus, the grid costs one build per
+ * impurity mode and fold, whatever the number of p-values, and the
+ * builds run at the same time. The numeric attributes are quantized again
+ * for every fold, by the values of its training rows only, so that the
+ * bins of a tree don't depend on the values of its test fold.
+ */
+public class CrossValidation {
+	private int m_NumFolds = 10;
+	private int m_Parallelism = Runtime.getRuntime().availableProcessors();
+	private long m_Seed = 1;
+	
+	
+	/* sets & gets methods */
+	
+	public int getNumFolds() {
+		return this.m_NumFolds;
+	}
+	
+	public void setNumFolds(int numFolds) {
+		if (numFolds < 2) {
+			throw new IllegalArgumentException("Number of folds must be at least 2: " + numFolds);
+		}
+		
+		this.m_NumFolds = numFolds;
+	}
+	
+	public int getParallelism() {
+		return this.m_Parallelism;
+	}
+	
+	/**
+	 * Sets the number of threads that build trees at the same time.
+	 * The default is the number of processors.
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		
+		this.m_Parallelism = parallelism;
+	}
+	
+	public long getSeed() {
+		return this.m_Seed;
+	}
+	
+	/**
+	 * Sets the seed of the shuffle that assigns the instances to folds.
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.m_Seed = seed;
+	}
+	
+	
+	/* public methods */
+	
+	/**
+	 * Cross validate every configuration of the grid. Every impurity mode
+	 * is tried without pruning, and with Chi pruning by every p-value.
+	 * @param instances - the training set, with a class index
+	 * @param impurityModes
+	 * @param pValues - the p-values of Chi pruning, in (0, 1]
+	 * @return the result of every configuration, in the grid order
+	 */
+	public List<TuningResult> gridSearch(Instances instances, eImpurityMode[] impurityModes, double[] pValues) {
+		
+		return this.gridSearch(new EncodedDataset(instances), instances, impurityModes, pValues);
+	}
+	
+	
+	/**
+	 * Cross validate every configuration of the grid, on training data
+	 * that is already encoded. The data is not changed. The values of the
+	 * numeric attributes are not kept by the encoding, so every fold uses
+	 * the bins of the whole data, which were found on the values (but not
+	 * the classes) of its test fold too.
+	 * @param data
+	 * @param impurityModes
+	 * @param pValues
+	 * @return the result of every configuration, in the grid order
+	 */
+	List<TuningResult> gridSearch(EncodedDataset data, eImpurityMode[] impurityModes, double[] pValues) {
+		
+		return this.gridSearch(data, null, impurityModes, pValues);
+	}
+	
+	
+	/* private methods */
+	
+	/**
+	 * Cross validate every configuration of the grid.
+	 * @param data
+	 * @param instances - the instances that the data was encoded from, 
+	 * to quantize the numeric attributes of every fold by its training 
+	 * rows, or null to keep the bins of the data
+	 * @param impurityModes
+	 * @param pValues
+	 * @return the result of every configuration, in the grid order
+	 */
+	private List<TuningResult> gridSearch(EncodedDataset data, Instances instances, 
+			eImpurityMode[] impurityModes, double[] pValues) {
+		for (double pValue : pValues) {
+			if (!(pValue > 0 && pValue <= 1)) {
+				throw new IllegalArgumentException("P-value must be in (0, 1]: " + pValue);
+			}
+		}
+		
+		int numFolds = this.getNumFolds();
+		
+		if (data.numRows < numFolds) {
+			throw new IllegalArgumentException("Expected at least " + numFolds + " instances, got "
+					+ data.numRows);
+		}
+		
+		int[] foldStarts = new int[numFolds + 1];
+		int[] shuffledRows = this.shuffleRows(data, foldStarts);
+		
+		// [impurity mode][configuration][fold], where configuration 0 is
+		// no pruning, and configuration 1 + i is pruning by pValues[i].
+		int numConfigurations = 1 + pValues.length;
+		double[][][] foldErrors = new double[impurityModes.length][numConfigurations][numFolds];
+		double[][][] foldMeanDepths = new double[impurityModes.length][numConfigurations][numFolds];
+		
+		ForkJoinPool pool = new ForkJoinPool(this.getParallelism());
+		
+		try {
+			pool.invoke(new FoldTask(data, instances, shuffledRows, foldStarts, impurityModes, pValues,
+					foldErrors, foldMeanDepths, 0, impurityModes.length * numFolds));
+		} finally {
+			pool.shutdown();
+		}
+		
+		List<TuningResult> results = new ArrayList<TuningResult>();
+		
+		for (int i = 0; i < impurityModes.length; i++) {
+			results.add(new TuningResult(impurityModes[i], ePruningMode.None, 1,
+					foldErrors[i][0], foldMeanDepths[i][0]));
+			
+			for (int j = 0; j < pValues.length; j++) {
+				results.add(new TuningResult(impurityModes[i], ePruningMode.Chi, pValues[j],
+						foldErrors[i][1 + j], foldMeanDepths[i][1 + j]));
+			}
+		}
+		
+		return results;
+	}
+	
+	
+	/**
+	 * Find the configuration with the lowest mean error. Ties go to the
+	 * first configuration, thus to the less pruned one in the grid order.
+	 * @param results
+	 * @return the best result
+	 */
+	public static TuningResult getBest(List<TuningResult> results) {
+		TuningResult bestResult = null;
+		
+		for (TuningResult result : results) {
+			if (bestResult == null || result.getMeanError() < bestResult.getMeanError()) {
+				bestResult = result;
+			}
+		}
+		
+		return bestResult;
+	}
+	
+	
+	/**
+	 * Shuffle the row indexes of the data, and divide them into folds of
+	 * (almost) the same size.
+	 * @param data
+	 * @param foldStarts - receives the start of every fold in the shuffled
+	 * rows, followed by the number of rows
+	 * @return the shuffled row indexes
+	 */
+	int[] shuffleRows(EncodedDataset data, int[] foldStarts) {
+		Random random = new Random(this.getSeed());
+		int numRows = data.numRows;
+		int numFolds = foldStarts.length - 1;
+		int[] shuffledRows = new int[numRows];
+		
+		for (int i = 0; i < numRows; i++) {
+			shuffledRows[i] = data.rows[i];
+		}
+		
+		// Fisher-Yates shuffle.
+		for (int i = numRows - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int row = shuffledRows[i];
+			shuffledRows[i] = shuffledRows[j];
+			shuffledRows[j] = row;
+		}
+		
+		for (int fold = 0; fold <= numFolds; fold++) {
+			foldStarts[fold] = (int) ((long) fold * numRows / numFolds);
+		}
+		
+		return shuffledRows;
+	}
+	
+	
+	/**
+	 * Cross validates the (impurity mode, fold) pairs of a range [from, to)
+	 * in a fork join pool, by halving the range until a single pair is
+	 * left. Every pair builds its tree on a training view of its own, and
+	 * writes only its own cells of the result arrays.
+	 */
+	private static class FoldTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final EncodedDataset data;
+		private final Instances instances;
+		private final int[] shuffledRows;
+		private final int[] foldStarts;
+		private final eImpurityMode[] impurityModes;
+		private final double[] pValues;
+		private final double[][][] foldErrors;
+		private final double[][][] foldMeanDepths;
+		private final int from;
+		private final int to;
+		
+		FoldTask(EncodedDataset data, Instances instances, int[] shuffledRows, int[] foldStarts,
+				eImpurityMode[] impurityModes, double[] pValues, double[][][] foldErrors,
+				double[][][] foldMeanDepths, int from, int to) {
+			this.data = data;
+			this.instances = instances;
+			this.shuffledRows = shuffledRows;
+			this.foldStarts = foldStarts;
+			this.impurityModes = impurityModes;
+			this.pValues = pValues;
+			this.foldErrors = foldErrors;
+			this.foldMeanDepths = foldMeanDepths;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (this.to - this.from > 1) {
+				int middle = (this.from + this.to) >>> 1;
+				
+				invokeAll(new FoldTask(this.data, this.instances, this.shuffledRows, this.foldStarts,
+								this.impurityModes, this.pValues, this.foldErrors, this.foldMeanDepths,
+								this.from, middle),
+						new FoldTask(this.data, this.instances, this.shuffledRows, this.foldStarts,
+								this.impurityModes, this.pValues, this.foldErrors, this.foldMeanDepths,
+								middle, this.to));
+				return;
+			}
+			
+			int numFolds = this.foldStarts.length - 1;
+			int impurity = this.from / numFolds;
+			int fold = this.from % numFolds;
+			int testFrom = this.foldStarts[fold];
+			int testTo = this.foldStarts[fold + 1];
+			int numRows = this.shuffledRows.length;
+			
+			// The training view is all of the rows but the fold. Its row
+			// index array is partitioned by the build, so it is not shared.
+			int[] trainingRows = new int[numRows - (testTo - testFrom)];
+			int[] testRows = new int[testTo - testFrom];
+			
+			System.arraycopy(this.shuffledRows, 0, trainingRows, 0, testFrom);
+			System.arraycopy(this.shuffledRows, testTo, trainingRows, testFrom, numRows - testTo);
+			System.arraycopy(this.shuffledRows, testFrom, testRows, 0, testRows.length);
+			
+			// The bins of the numeric attributes are found on the training
+			// rows, and the test rows are encoded by them.
+			EncodedDataset foldData = this.instances != null ? 
+					this.data.rebin(this.instances, trainingRows, EncodedDataset.DEFAULT_MAX_BINS) : this.data;
+			EncodedDataset testData = new EncodedDataset(foldData, testRows);
+			DecisionTree unprunedTree = new DecisionTree(this.impurityModes[impurity], ePruningMode.None);
+			unprunedTree.buildClassifier(new EncodedDataset(foldData, trainingRows));
+			
+			this.record(impurity, 0, fold, unprunedTree.evaluate(testData));
+			
+			for (int j = 0; j < this.pValues.length; j++) {
+				DecisionTree prunedTree = unprunedTree.prunedView(this.pValues[j]);
+				
+				this.record(impurity, 1 + j, fold, prunedTree.evaluate(testData));
+			}
+		}
+		
+		/**
+		 * Keep the measures of a configuration on a fold.
+		 */
+		private void record(int impurity, int configuration, int fold, EvaluationReport report) {
+			this.foldErrors[impurity][configuration][fold] = report.getErrorRate();
+			this.foldMeanDepths[impurity][configuration][fold] = report.getMeanDepth();
+		}
+	}
+}
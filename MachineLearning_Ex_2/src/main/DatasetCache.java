@@ -0,0 +1,396 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+
+/**
+ * Binary, column oriented cache of ARFF datasets, in a cache directory.
+ * The first time a dataset is loaded, its ARFF file is parsed and
+ * converted into a cache file in the directory (named after the file,
+ * with a ".cache" suffix). Later loads memory map the cache file, copy
+ * its columns in bulk and unmap it, without parsing any text, and the
+ * encoded dataset is made of the columns without creating an Instance
+ * object per row. A cache file is rebuilt when the length or the
+ * modification time of its ARFF file changed, and when it can't be read,
+ * for example if it was truncated.
+ * Only datasets of nominal attributes are cached, since a column keeps
+ * value indexes. Other datasets are parsed on every load.
+ *
+ * The cache file layout (big endian) is:
+ * magic, version, header length, then the header - source file length and
+ * modification time, relation name, class index, and every attribute with
+ * its nominal values - then the number of rows, and the column of every
+ * attribute (the class too) as shorts, where the number of values of the
+ * attribute stands for a missing value.
+ */
+final class DatasetCache {
+	private static final int MAGIC = 0x44544331;    // "DTC1"
+	private static final int VERSION = 2;
+	private static final String SUFFIX = ".cache";
+
+	private final File m_CacheDirectory;
+
+
+	/**
+	 * Constructor of a cache that keeps its files in the given directory.
+	 * The directory is created by the first cache file.
+	 * @param cacheDirectory
+	 */
+	DatasetCache(File cacheDirectory) {
+		this.m_CacheDirectory = cacheDirectory;
+	}
+
+
+	File getCacheDirectory() {
+		return this.m_CacheDirectory;
+	}
+
+
+	/**
+	 * Load the encoded dataset of an ARFF file, through its cache file.
+	 * The class index is set as the last attribute, like MainHW2.loadData.
+	 * Instances with a missing class value are left out, like in the
+	 * in-memory encoding.
+	 * @param fileName - ARFF file
+	 * @return encoded dataset
+	 * @throws IOException if the ARFF file can't be read
+	 */
+	EncodedDataset load(String fileName) throws IOException {
+		File sourceFile = new File(fileName);
+		File cacheFile = this.cacheFileOf(sourceFile);
+		CachedColumns cachedColumns = read(cacheFile, sourceFile);
+
+		if (cachedColumns != null) {
+			return cachedColumns.toEncodedDataset();
+		}
+
+		return new EncodedDataset(convert(sourceFile, cacheFile));
+	}
+
+
+	/**
+	 * @param sourceFile - an ARFF file
+	 * @return the cache file of the ARFF file. The name has the hash of the
+	 * full path of the ARFF file, so files of the same name in other
+	 * directories have cache files of their own.
+	 */
+	File cacheFileOf(File sourceFile) {
+		String pathHash = Integer.toHexString(sourceFile.getAbsolutePath().hashCode());
+
+		return new File(this.m_CacheDirectory, sourceFile.getName() + "-" + pathHash + SUFFIX);
+	}
+
+
+	/**
+	 * Parse an ARFF file, and write its cache file if its attributes can
+	 * be cached. A cache file that can't be written, for example in a read
+	 * only directory, is reported and skipped, since the instances are
+	 * loaded anyway. The next load tries again.
+	 * @param sourceFile - the ARFF file
+	 * @param cacheFile
+	 * @return the instances of the file, with the class index set as the
+	 * last attribute
+	 * @throws IOException if the ARFF file can't be read
+	 */
+	private static Instances convert(File sourceFile, File cacheFile) throws IOException {
+		Instances instances = MainHW2.loadData(sourceFile.getPath());
+
+		if (!isCacheable(instances)) {
+			// Drop a cache file of a former version of the ARFF file.
+			cacheFile.delete();
+			return instances;
+		}
+
+		try {
+			Files.createDirectories(cacheFile.getParentFile().toPath());
+			write(instances, sourceFile, cacheFile);
+		} catch (IOException e) {
+			System.err.println("Dataset cache not written: " + cacheFile + ": " + e);
+		}
+
+		return instances;
+	}
+
+
+	/**
+	 * @param instances
+	 * @return true if every attribute is nominal, with values that fit the
+	 * short columns
+	 */
+	static boolean isCacheable(Instances instances) {
+		for (int attributeIndex = 0; attributeIndex < instances.numAttributes(); attributeIndex++) {
+			Attribute attribute = instances.attribute(attributeIndex);
+
+			if (!attribute.isNominal() || attribute.numValues() >= Short.MAX_VALUE) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Write the instances into a cache file. The file is written aside and
+	 * then moved in place, so a reader never sees half of it.
+	 * @param instances - instances of nominal attributes, with a class index
+	 * @param sourceFile - the ARFF file of the instances
+	 * @param cacheFile
+	 * @throws IOException
+	 */
+	static void write(Instances instances, File sourceFile, File cacheFile) throws IOException {
+		byte[] header = writeHeader(instances, sourceFile);
+		File tempFile = new File(cacheFile.getPath() + ".tmp");
+
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(header.length);
+			output.write(header);
+			output.writeInt(instances.numInstances());
+
+			for (int attributeIndex = 0; attributeIndex < instances.numAttributes(); attributeIndex++) {
+				int missingValueIndex = instances.attribute(attributeIndex).numValues();
+
+				for (int i = 0; i < instances.numInstances(); i++) {
+					output.writeShort(instances.instance(i).isMissing(attributeIndex) ?
+							missingValueIndex : (int) instances.instance(i).value(attributeIndex));
+				}
+			}
+		} catch (IOException e) {
+			tempFile.delete();
+			throw e;
+		}
+
+		Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+
+	/**
+	 * Read the columns of a cache file, by memory mapping it. The mapping
+	 * is released as soon as the columns are copied, so the file can be
+	 * replaced when it is stale.
+	 * @param cacheFile
+	 * @param sourceFile - the ARFF file of the dataset
+	 * @return the columns, or null if the cache file is missing, stale,
+	 * has another format version or can't be read.
+	 */
+	static CachedColumns read(File cacheFile, File sourceFile) {
+		if (!cacheFile.exists()) {
+			return null;
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+				FileChannel channel = file.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			try {
+				return readColumns(buffer, sourceFile);
+			} finally {
+				unmap(buffer);
+			}
+		} catch (IOException | RuntimeException e) {
+			// A broken file, for example a truncated header, is rebuilt.
+			return null;
+		}
+	}
+
+
+	/**
+	 * Read the columns of a mapped cache file.
+	 * @param buffer - the mapped cache file
+	 * @param sourceFile - the ARFF file of the dataset
+	 * @return the columns, or null if the cache file is stale, has another
+	 * format version or was truncated.
+	 * @throws IOException
+	 */
+	private static CachedColumns readColumns(MappedByteBuffer buffer, File sourceFile) throws IOException {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+
+		byte[] headerBytes = new byte[buffer.getInt()];
+		buffer.get(headerBytes);
+
+		DataInputStream headerInput = new DataInputStream(new ByteArrayInputStream(headerBytes));
+
+		if (headerInput.readLong() != sourceFile.length()
+				|| headerInput.readLong() != sourceFile.lastModified()) {
+			return null;
+		}
+
+		Instances header = readHeader(headerInput);
+		int numRows = buffer.getInt();
+
+		if (buffer.remaining() != 2L * numRows * header.numAttributes()) {
+			// A truncated file.
+			return null;
+		}
+
+		// Copy the columns in bulk, straight from the mapped file.
+		short[][] columns = new short[header.numAttributes()][];
+
+		for (int attributeIndex = 0; attributeIndex < columns.length; attributeIndex++) {
+			columns[attributeIndex] = readColumn(buffer, numRows);
+		}
+
+		return new CachedColumns(header, columns);
+	}
+
+
+	/**
+	 * Write the source file stamp and the dataset structure.
+	 * @param header - structure of the dataset, of nominal attributes
+	 * @param sourceFile
+	 * @return the written bytes
+	 * @throws IOException
+	 */
+	private static byte[] writeHeader(Instances header, File sourceFile) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+
+		output.writeLong(sourceFile.length());
+		output.writeLong(sourceFile.lastModified());
+		output.writeUTF(header.relationName());
+		output.writeInt(header.numAttributes());
+		output.writeInt(header.classIndex());
+
+		for (int attributeIndex = 0; attributeIndex < header.numAttributes(); attributeIndex++) {
+			Attribute attribute = header.attribute(attributeIndex);
+
+			output.writeUTF(attribute.name());
+			output.writeInt(attribute.numValues());
+
+			for (int valueIndex = 0; valueIndex < attribute.numValues(); valueIndex++) {
+				output.writeUTF(attribute.value(valueIndex));
+			}
+		}
+
+		output.flush();
+
+		return bytes.toByteArray();
+	}
+
+
+	/**
+	 * Read the dataset structure that follows the source file stamp.
+	 * @param input
+	 * @return structure of the dataset, with its class index set
+	 * @throws IOException
+	 */
+	private static Instances readHeader(DataInputStream input) throws IOException {
+		String relationName = input.readUTF();
+		int numAttributes = input.readInt();
+		int classIndex = input.readInt();
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			String name = input.readUTF();
+			int numValues = input.readInt();
+			ArrayList<String> values = new ArrayList<String>();
+
+			for (int valueIndex = 0; valueIndex < numValues; valueIndex++) {
+				values.add(input.readUTF());
+			}
+
+			attributes.add(new Attribute(name, values));
+		}
+
+		Instances header = new Instances(relationName, attributes, 0);
+		header.setClassIndex(classIndex);
+
+		return header;
+	}
+
+
+	/**
+	 * Release the mapping of a buffer now, instead of when the buffer is
+	 * collected. Windows does not replace or delete a mapped file. The
+	 * buffer must not be used afterwards. Without the cleaner of the JDK,
+	 * the mapping is left to the garbage collector.
+	 * @param buffer
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			unsafeField.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafeField.get(null), buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Left to the garbage collector.
+		}
+	}
+
+
+	/**
+	 * Read a column, and move the buffer past it.
+	 */
+	private static short[] readColumn(MappedByteBuffer buffer, int numRows) {
+		short[] column = new short[numRows];
+
+		buffer.asShortBuffer().get(column);
+		((Buffer) buffer).position(buffer.position() + 2 * numRows);
+
+		return column;
+	}
+
+
+	/**
+	 * The columns of a cache file, with the structure of their dataset.
+	 */
+	static final class CachedColumns {
+		final Instances header;
+		final short[][] columns;    // [attributeIndex][row], the class attribute too.
+
+
+		CachedColumns(Instances header, short[][] columns) {
+			this.header = header;
+			this.columns = columns;
+		}
+
+
+		/**
+		 * @return the encoded dataset of the columns, which are used as they
+		 * are. Rows with a missing class value are left out by a view.
+		 */
+		EncodedDataset toEncodedDataset() {
+			int classIndex = this.header.classIndex();
+			short[] classColumn = this.columns[classIndex];
+			short[][] columns = this.columns.clone();
+			columns[classIndex] = null;
+
+			EncodedDataset data = new EncodedDataset(this.header, columns, classColumn);
+			int[] rows = new int[classColumn.length];
+			int numRows = 0;
+
+			for (int row = 0; row < classColumn.length; row++) {
+				if (classColumn[row] != data.numClasses) {
+					rows[numRows++] = row;
+				}
+			}
+
+			return numRows == classColumn.length ? data : new EncodedDataset(data, Arrays.copyOf(rows, numRows));
+		}
+	}
+}
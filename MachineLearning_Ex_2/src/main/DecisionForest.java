@@ -0,0 +1,398 @@
+package main;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.classifiers.Classifier;
+import weka.core.Capabilities;
+import weka.core.CapabilitiesHandler;
+import weka.core.Instance;
+import weka.core.Instances;
+
+
+/**
+ * Ensemble of decision trees (bagging / random forest). Every tree is 
+ * built on a bootstrap sample of the training set, and chooses every 
+ * split from random attributes. The trees vote on the classification, 
+ * and ties go to the lowest class value.
+ * The training set is encoded once, and all of the trees share its 
+ * columns. A bootstrap sample is only a row index array, that lives 
+ * while its tree is built, and a built tree is kept in its compiled form 
+ * only. Thus, the memory of the forest grows with the size of its trees, 
+ * not with copies of the training set.
+ */
+public class DecisionForest implements Classifier, CapabilitiesHandler {
+	private CompiledTree[] m_Trees;
+	private int m_NumClasses;
+	private eImpurityMode m_ImpurityMode;
+	private int m_NumTrees = 100;
+	private int m_NumRandomAttributes = 0;
+	private int m_Parallelism = Runtime.getRuntime().availableProcessors();
+	private long m_Seed = 1;
+	
+	
+	/**
+	 * Constructor that create a decision forest object.
+	 * @param impurityMode
+	 */
+	public DecisionForest(eImpurityMode impurityMode) {
+		
+		m_ImpurityMode = impurityMode;
+	}
+	
+	
+	/* sets & gets methods */
+	
+	public eImpurityMode getImpurityMode() {
+		return this.m_ImpurityMode;
+	}
+	
+	public int getNumTrees() {
+		return this.m_NumTrees;
+	}
+	
+	public void setNumTrees(int numTrees) {
+		if (numTrees < 1) {
+			throw new IllegalArgumentException("Number of trees must be positive: " + numTrees);
+		}
+		
+		this.m_NumTrees = numTrees;
+	}
+	
+	public int getNumRandomAttributes() {
+		return this.m_NumRandomAttributes;
+	}
+	
+	/**
+	 * Sets the number of random attributes that every split chooses from. 
+	 * 0 (the default) uses the square root of the number of attributes.
+	 * @param numRandomAttributes
+	 */
+	public void setNumRandomAttributes(int numRandomAttributes) {
+		if (numRandomAttributes < 0) {
+			throw new IllegalArgumentException("Number of random attributes must not be negative: " 
+					+ numRandomAttributes);
+		}
+		
+		this.m_NumRandomAttributes = numRandomAttributes;
+	}
+	
+	public int getParallelism() {
+		return this.m_Parallelism;
+	}
+	
+	/**
+	 * Sets the number of threads that build trees at the same time. 
+	 * The default is the number of processors.
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		
+		this.m_Parallelism = parallelism;
+	}
+	
+	public long getSeed() {
+		return this.m_Seed;
+	}
+	
+	/**
+	 * Sets the seed of the bootstrap samples and of the random attributes. 
+	 * The same seed builds the same forest, for any parallelism.
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.m_Seed = seed;
+	}
+	
+	
+	/* public methods */
+	
+	/**
+	 * Build the trees of the forest from the training data, in parallel.
+	 * @param trainingInstances
+	 */
+	@Override
+	public void buildClassifier(Instances trainingInstances) {
+		
+		this.buildClassifier(new EncodedDataset(trainingInstances));
+	}
+	
+	
+	/**
+	 * Build the trees of the forest from training data that is already 
+	 * encoded. The data is not changed.
+	 * @param data
+	 */
+	void buildClassifier(EncodedDataset data) {
+		CompiledTree[] trees = new CompiledTree[this.getNumTrees()];
+		int numRandomAttributes = this.getNumRandomAttributes();
+		
+		if (numRandomAttributes == 0) {
+			numRandomAttributes = Math.max(1, (int) Math.round(Math.sqrt(data.columns.length - 1)));
+		}
+		
+		// The seeds of the trees are drawn from one generator, since the 
+		// generators of consecutive seeds draw correlated samples.
+		Random random = new Random(this.getSeed());
+		long[] treeSeeds = new long[trees.length];
+		
+		for (int treeIndex = 0; treeIndex < treeSeeds.length; treeIndex++) {
+			treeSeeds[treeIndex] = random.nextLong();
+		}
+		
+		ForkJoinPool buildPool = new ForkJoinPool(this.getParallelism());
+		
+		try {
+			buildPool.invoke(new TreeBuildTask(data, numRandomAttributes, treeSeeds, trees, 0, trees.length));
+		} finally {
+			buildPool.shutdown();
+		}
+		
+		this.m_NumClasses = data.numClasses;
+		this.m_Trees = trees;
+	}
+	
+	
+	/**
+	 * Return the classification of the instance, by the votes of the trees.
+	 * @param instance
+	 * @return the class value with the most votes
+	 */
+	@Override
+	public double classifyInstance(Instance instance) {
+		
+		return DecisionForest.getMostVotedClassValue(this.countVotes(instance));
+	}
+	
+	
+	/**
+	 * Return the votes of the trees for every class value, as fractions of 
+	 * the number of trees.
+	 * @param instance
+	 * @return vote fraction of every class value
+	 */
+	@Override
+	public double[] distributionForInstance(Instance instance) {
+		int[] votes = this.countVotes(instance);
+		double[] distribution = new double[votes.length];
+		
+		for (int classIndex = 0; classIndex < votes.length; classIndex++) {
+			distribution[classIndex] = (double) votes[classIndex] / this.m_Trees.length;
+		}
+		
+		return distribution;
+	}
+	
+	
+	/**
+	 * Classify a batch of instances. The instances are split into chunks 
+	 * that are classified in parallel, on the common fork join pool, and 
+	 * every chunk is classified by one tree after the other, so the tree 
+	 * stays in the cache for the whole chunk.
+	 * @param instances
+	 * @return the classification of every instance
+	 */
+	public double[] classifyInstances(Instances instances) {
+		double[] classValues = new double[instances.numInstances()];
+		
+		ForkJoinPool.commonPool().invoke(
+				new VotingTask(this.m_Trees, this.m_NumClasses, instances, classValues, 0, classValues.length));
+		
+		return classValues;
+	}
+	
+	
+	/**
+	 * Calculate the average error of the forest on a given instances set, 
+	 * like DecisionTree.calcAvgError.
+	 * @param instances
+	 * @return average classification error
+	 */
+	public double calcAvgError(Instances instances) {
+		double[] classValues = this.classifyInstances(instances);
+		int numErrors = 0;
+		
+		for (int i = 0; i < classValues.length; i++) {
+			if (classValues[i] != instances.instance(i).classValue()) {
+				numErrors++;
+			}
+		}
+		
+		return (double) numErrors / classValues.length;
+	}
+	
+	
+	/**
+	 * @return the capabilities of the trees of the forest
+	 */
+	@Override
+	public Capabilities getCapabilities() {
+		Capabilities capabilities = new DecisionTree(this.getImpurityMode(), ePruningMode.None).getCapabilities();
+		capabilities.setOwner(this);
+		
+		return capabilities;
+	}
+	
+	
+	/* private methods */
+	
+	/**
+	 * Count the votes of the trees for every class value.
+	 * @param instance
+	 * @return number of votes of every class value
+	 */
+	private int[] countVotes(Instance instance) {
+		int[] votes = new int[this.m_NumClasses];
+		
+		for (CompiledTree tree : this.m_Trees) {
+			double classValue = tree.classifyInstance(instance);
+			
+			if (classValue >= 0) {
+				votes[(int) classValue]++;
+			}
+		}
+		
+		return votes;
+	}
+	
+	
+	/**
+	 * Find the class value with the most votes. Ties go to the lowest 
+	 * class value.
+	 * @param votes
+	 * @return the most voted class value, or -1 if there are no votes.
+	 */
+	private static double getMostVotedClassValue(int[] votes) {
+		double mostVotedClassValue = -1;
+		int mostVotes = 0;
+		
+		for (int classIndex = 0; classIndex < votes.length; classIndex++) {
+			if (votes[classIndex] > mostVotes) {
+				mostVotedClassValue = classIndex;
+				mostVotes = votes[classIndex];
+			}
+		}
+		
+		return mostVotedClassValue;
+	}
+	
+	
+	/**
+	 * Builds the trees of a range [fromTree, toTree) in a fork join pool, 
+	 * by halving the range until a single tree is left. Every tree draws 
+	 * its bootstrap sample from a random generator of its own, whose seed 
+	 * was drawn for its index in advance, so the forest does not depend 
+	 * on the order of the tasks.
+	 */
+	private class TreeBuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final EncodedDataset data;
+		private final int numRandomAttributes;
+		private final long[] treeSeeds;
+		private final CompiledTree[] trees;
+		private final int fromTree;
+		private final int toTree;
+		
+		TreeBuildTask(EncodedDataset data, int numRandomAttributes, long[] treeSeeds, CompiledTree[] trees, 
+				int fromTree, int toTree) {
+			this.data = data;
+			this.numRandomAttributes = numRandomAttributes;
+			this.treeSeeds = treeSeeds;
+			this.trees = trees;
+			this.fromTree = fromTree;
+			this.toTree = toTree;
+		}
+		
+		@Override
+		protected void compute() {
+			if (this.toTree - this.fromTree > 1) {
+				int middleTree = (this.fromTree + this.toTree) >>> 1;
+				
+				invokeAll(new TreeBuildTask(this.data, this.numRandomAttributes, this.treeSeeds, this.trees, 
+								this.fromTree, middleTree),
+						new TreeBuildTask(this.data, this.numRandomAttributes, this.treeSeeds, this.trees, 
+								middleTree, this.toTree));
+				return;
+			}
+			
+			Random random = new Random(this.treeSeeds[this.fromTree]);
+			int numRows = this.data.numRows;
+			
+			// Draw the bootstrap sample, with replacement.
+			int[] rows = new int[numRows];
+			
+			for (int i = 0; i < numRows; i++) {
+				rows[i] = random.nextInt(numRows);
+			}
+			
+			DecisionTree decisionTree = new DecisionTree(getImpurityMode(), ePruningMode.None);
+			decisionTree.setNumRandomAttributes(this.numRandomAttributes);
+			decisionTree.setSeed(random.nextLong());
+			decisionTree.buildClassifier(new EncodedDataset(this.data, rows));
+			
+			this.trees[this.fromTree] = decisionTree.getCompiledTree();
+		}
+	}
+	
+	
+	/**
+	 * Classifies the instances of a range [from, to) in a fork join pool, 
+	 * by halving the range until it is small enough to be a single chunk.
+	 */
+	private static class VotingTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int CHUNK_SIZE = 1024;
+		private final CompiledTree[] trees;
+		private final int numClasses;
+		private final Instances instances;
+		private final double[] classValues;
+		private final int from;
+		private final int to;
+		
+		VotingTask(CompiledTree[] trees, int numClasses, Instances instances, double[] classValues, 
+				int from, int to) {
+			this.trees = trees;
+			this.numClasses = numClasses;
+			this.instances = instances;
+			this.classValues = classValues;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (this.to - this.from > CHUNK_SIZE) {
+				int middle = (this.from + this.to) >>> 1;
+				
+				invokeAll(new VotingTask(this.trees, this.numClasses, this.instances, this.classValues, 
+								this.from, middle),
+						new VotingTask(this.trees, this.numClasses, this.instances, this.classValues, 
+								middle, this.to));
+				return;
+			}
+			
+			int[][] votes = new int[this.to - this.from][this.numClasses];
+			
+			// Let one tree classify the whole chunk before the next tree.
+			for (CompiledTree tree : this.trees) {
+				for (int i = this.from; i < this.to; i++) {
+					double classValue = tree.classifyInstance(this.instances.instance(i));
+					
+					if (classValue >= 0) {
+						votes[i - this.from][(int) classValue]++;
+					}
+				}
+			}
+			
+			for (int i = this.from; i < this.to; i++) {
+				this.classValues[i] = getMostVotedClassValue(votes[i - this.from]);
+			}
+		}
+	}
+}
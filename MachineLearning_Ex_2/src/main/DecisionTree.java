@@ -1,38 +1,84 @@
 package main;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import weka.classifiers.Classifier;
-import weka.core.Attribute;
+import weka.classifiers.UpdateableClassifier;
 import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.CapabilitiesHandler;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.converters.ArffLoader;
 
 
-class Node {
-	Node[] children;     
-	Node parent;         
-	int attributeIndex; 
-	double returnValue;
-	double branch; 
-	List<Double> attributeValuesBranches; 
-
-}
-	
-
-public class DecisionTree implements Classifier {
+public class DecisionTree implements Classifier, UpdateableClassifier, TreePredictor, CapabilitiesHandler {
 	private Node rootNode;
+	private volatile CompiledTree m_CompiledTree;
 	public enum ePruningMode {None, Chi};
 	public enum eImpurityMode {Entropy, Gini};
+	public enum eBuildMode {Recursive, Queue};
+	public enum eSplitEngine {RowScan, Bitmap};
 	private eImpurityMode m_ImpurutyMode;
 	private ePruningMode m_PruningMode; 
 	private double[][] m_TableOfChiProb;
 	private int m_PValueIndex;
+	private ChiSquareQuantiles m_ChiQuantiles;
 	int m_TotalHeighs = 0;
 	int m_CountHeight = 0;
+	private eBuildMode m_BuildMode = eBuildMode.Recursive;
+	private eSplitEngine m_SplitEngine = eSplitEngine.RowScan;
+	private int m_Parallelism = 1;
+	private int m_MinRowsForParallelSubtree = 10000;
+	private ForkJoinPool m_BuildPool;
+	private Instances m_Header;
+	private double m_SplitConfidence = 1e-7;
+	private double m_TieThreshold = 0.05;
+	private int m_GracePeriod = 200;
+	private int m_NumRandomAttributes = 0;
+	private long m_Seed = 1;
+	private Random m_Random;
+	private int m_MaxBins = EncodedDataset.DEFAULT_MAX_BINS;
+	private boolean m_CollectStatistics = false;
+	private boolean m_DeduplicateRows = false;
+	private int m_MaxRowsInMemory = 1 << 22;
+	private File m_SpillDirectory;
+	private BuildCounters m_Counters;             // counters of the running build, or null.
+	private BuildStatistics m_BuildStatistics;
+	
+	// Nodes with less rows than this are scored on the calling thread, 
+	// since splitting their work between threads costs more than it saves.
+	private static final int MIN_ROWS_FOR_PARALLEL_SCORING = 2048;
+	
+	// n * log2(n) of the counts below 2^16, which are most of the counts 
+	// of a build. The entropy and the information gain are sums of such 
+	// terms, and they match the per class probability formulas within 
+	// GAIN_EPSILON.
+	private static final double[] N_LOG2_N = new double[1 << 16];
+	
+	static {
+		for (int n = 1; n < N_LOG2_N.length; n++) {
+			N_LOG2_N[n] = n * (Math.log(n) / Math.log(2));
+		}
+	}
+	
+	// Gains that differ by less than this are equal, and a gain below it 
+	// is no gain, since it is in the rounding error of the gain formulas.
+	private static final double GAIN_EPSILON = 1e-12;
+	
+	// Number of values of a numeric attribute that its cut points are 
+	// found from, in out-of-core training.
+	private static final int CUT_POINT_SAMPLE_SIZE = 1 << 18;
 	
 	
 	/**
@@ -64,7 +110,28 @@ public class DecisionTree implements Classifier {
 		m_ImpurutyMode = impurutyMode;
 		m_TableOfChiProb = tableOfChiProb;
 		m_PValueIndex = PValueIndex;
-
+		
+		// The p-value of the table column is used for the degrees of freedom 
+		// that the table does not have. Only a Chi pruned tree needs it, 
+		// and the other trees may have no table.
+		if (pruningMode.equals(ePruningMode.Chi) && tableOfChiProb != null) {
+			m_ChiQuantiles = ChiSquareQuantiles.forTableColumn(tableOfChiProb, PValueIndex);
+		}
+	}
+	
+	
+	/**
+	 * Constructor that create a Decision tree object, that is pruned by 
+	 * Chi Square with the given p-value, for any degree of freedom.
+	 * @param impurutyMode
+	 * @param pruningMode
+	 * @param pValue - in (0, 1], where 1 does not prune
+	 */
+	public DecisionTree (eImpurityMode impurutyMode, ePruningMode pruningMode, double pValue) {
+		
+		m_PruningMode = pruningMode;
+		m_ImpurutyMode = impurutyMode;
+		m_ChiQuantiles = ChiSquareQuantiles.forPValue(pValue);
 	}
 	
 	
@@ -105,6 +172,270 @@ public class DecisionTree implements Classifier {
 		return this.m_PValueIndex;
 	}
 	
+	/**
+	 * @return the p-value of the Chi Square pruning, NaN if there is none.
+	 */
+	public double getPValue() {
+		return this.m_ChiQuantiles != null ? this.m_ChiQuantiles.getPValue() : Double.NaN;
+	}
+	
+	public eBuildMode getBuildMode() {
+		return this.m_BuildMode;
+	}
+	
+	/**
+	 * Sets the algorithm that builds the tree. Recursive (the default) builds 
+	 * the tree depth first. Queue builds it level by level, with one pass over 
+	 * the training set for all of the nodes of a level, and without recursion.
+	 * Both give the same tree. 
+	 * The queue build holds the contingency tables of every impure node of 
+	 * a level at once, which are (number of value indexes of all attributes) 
+	 * x (number of classes) ints per node, besides a frontier slot per row. 
+	 * Thus, a wide level of a tree with many attribute values can take much 
+	 * more memory than the recursive build, which holds the tables of the 
+	 * nodes on a single path. 
+	 * The queue build doesn't draw random attributes, so a tree with random 
+	 * attributes is built by the recursive build in any case.
+	 * @param buildMode
+	 */
+	public void setBuildMode(eBuildMode buildMode) {
+		this.m_BuildMode = buildMode;
+	}
+	
+	public eSplitEngine getSplitEngine() {
+		return this.m_SplitEngine;
+	}
+	
+	/**
+	 * Sets how the contingency tables of the nodes are counted. RowScan 
+	 * (the default) scans the rows of every node. Bitmap indexes every 
+	 * attribute value and class value as a bitmap over the rows, and counts 
+	 * every table cell by popcount of the node bitmap and the value bitmaps, 
+	 * until the node rows get too sparse for it. It pays off for dense data 
+	 * with few values per attribute. The bitmap engine builds the tree depth 
+	 * first on the calling thread, whatever the build mode and parallelism, 
+	 * and it falls back to row scans for weighted (deduplicated) rows. 
+	 * Both engines give the same tree.
+	 * @param splitEngine
+	 */
+	public void setSplitEngine(eSplitEngine splitEngine) {
+		this.m_SplitEngine = splitEngine;
+	}
+	
+	public int getParallelism() {
+		return this.m_Parallelism;
+	}
+	
+	/**
+	 * Sets the number of threads that build the tree. They score the 
+	 * candidate attributes of a node, and build its large subtrees, in 
+	 * parallel. 1 (the default) builds the tree sequentially. 
+	 * The built tree is the same for every parallelism level.
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		
+		this.m_Parallelism = parallelism;
+	}
+	
+	public int getMinRowsForParallelSubtree() {
+		return this.m_MinRowsForParallelSubtree;
+	}
+	
+	/**
+	 * Sets the number of rows from which a subtree is built as a separate 
+	 * fork join task, when the parallelism is above 1. Smaller subtrees are 
+	 * built by the thread of their parent, to avoid the task overhead.
+	 * @param minRows
+	 */
+	public void setMinRowsForParallelSubtree(int minRows) {
+		this.m_MinRowsForParallelSubtree = minRows;
+	}
+	
+	public double getSplitConfidence() {
+		return this.m_SplitConfidence;
+	}
+	
+	/**
+	 * Sets the probability of a wrong incremental split (the delta of the 
+	 * Hoeffding bound). A leaf is split only when its best attribute beats 
+	 * the second best one by more than the bound, so a lower value waits 
+	 * for more instances before splitting.
+	 * @param splitConfidence
+	 */
+	public void setSplitConfidence(double splitConfidence) {
+		if (splitConfidence <= 0 || splitConfidence >= 1) {
+			throw new IllegalArgumentException("Split confidence must be in (0, 1): " + splitConfidence);
+		}
+		
+		this.m_SplitConfidence = splitConfidence;
+	}
+	
+	public double getTieThreshold() {
+		return this.m_TieThreshold;
+	}
+	
+	/**
+	 * Sets the Hoeffding bound under which two attributes are considered 
+	 * equally good, and the leaf is split by the first of them anyway.
+	 * @param tieThreshold
+	 */
+	public void setTieThreshold(double tieThreshold) {
+		if (tieThreshold < 0) {
+			throw new IllegalArgumentException("Tie threshold must not be negative: " + tieThreshold);
+		}
+		
+		this.m_TieThreshold = tieThreshold;
+	}
+	
+	public int getGracePeriod() {
+		return this.m_GracePeriod;
+	}
+	
+	/**
+	 * Sets the number of instances that a leaf sees between its split checks, 
+	 * in incremental training.
+	 * @param gracePeriod
+	 */
+	public void setGracePeriod(int gracePeriod) {
+		if (gracePeriod < 1) {
+			throw new IllegalArgumentException("Grace period must be positive: " + gracePeriod);
+		}
+		
+		this.m_GracePeriod = gracePeriod;
+	}
+	
+	public int getNumRandomAttributes() {
+		return this.m_NumRandomAttributes;
+	}
+	
+	/**
+	 * Sets the number of attributes that every split chooses from, at random 
+	 * (like in a random forest). 0 (the default) considers all of the 
+	 * attributes. The random attributes are not drawn by the queue build, 
+	 * thus a tree with random attributes is always built recursively.
+	 * @param numRandomAttributes
+	 */
+	public void setNumRandomAttributes(int numRandomAttributes) {
+		if (numRandomAttributes < 0) {
+			throw new IllegalArgumentException("Number of random attributes must not be negative: " 
+					+ numRandomAttributes);
+		}
+		
+		this.m_NumRandomAttributes = numRandomAttributes;
+	}
+	
+	public long getSeed() {
+		return this.m_Seed;
+	}
+	
+	/**
+	 * Sets the seed of the random attributes of the splits. The same seed 
+	 * builds the same tree, as long as the tree is built sequentially.
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.m_Seed = seed;
+	}
+	
+	public int getMaxBins() {
+		return this.m_MaxBins;
+	}
+	
+	/**
+	 * Sets the maximal number of bins that a numeric attribute is quantized 
+	 * into, before the tree is built. A numeric attribute is split in two, 
+	 * by the best threshold between its bins.
+	 * @param maxBins
+	 */
+	public void setMaxBins(int maxBins) {
+		if (maxBins < 2 || maxBins >= Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of bins must be in [2, " + Short.MAX_VALUE + "): " + maxBins);
+		}
+		
+		this.m_MaxBins = maxBins;
+	}
+	
+	public boolean getDeduplicateRows() {
+		return this.m_DeduplicateRows;
+	}
+	
+	/**
+	 * Sets whether the training rows are deduplicated before the build. 
+	 * Identical rows are collapsed into one row, weighted by the number 
+	 * of its copies, which builds the same tree at the cost of the distinct 
+	 * rows. It pays off for nominal data with few values, which has many 
+	 * duplicate rows.
+	 * @param deduplicateRows
+	 */
+	public void setDeduplicateRows(boolean deduplicateRows) {
+		this.m_DeduplicateRows = deduplicateRows;
+	}
+	
+	public int getMaxRowsInMemory() {
+		return this.m_MaxRowsInMemory;
+	}
+	
+	/**
+	 * Sets the number of rows from which a node is trained out of core, 
+	 * by buildClassifier of an ARFF file. Larger nodes keep their rows in 
+	 * spill files, and smaller ones are loaded into memory. An encoded row 
+	 * takes about 2 bytes per attribute in memory.
+	 * @param maxRows
+	 */
+	public void setMaxRowsInMemory(int maxRows) {
+		if (maxRows < 1) {
+			throw new IllegalArgumentException("Number of rows in memory must be positive: " + maxRows);
+		}
+		
+		this.m_MaxRowsInMemory = maxRows;
+	}
+	
+	public File getSpillDirectory() {
+		return this.m_SpillDirectory;
+	}
+	
+	/**
+	 * Sets the directory of the spill files of out-of-core training. 
+	 * null (the default) is the temporary directory of the system. 
+	 * A local disk with room for about twice the encoded rows is best.
+	 * @param spillDirectory
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.m_SpillDirectory = spillDirectory;
+	}
+	
+	public boolean getCollectStatistics() {
+		return this.m_CollectStatistics;
+	}
+	
+	/**
+	 * Sets whether the builds count their work into build statistics. 
+	 * The statistics are also collected whenever the flight recorder 
+	 * records the build event.
+	 * @param collectStatistics
+	 */
+	public void setCollectStatistics(boolean collectStatistics) {
+		this.m_CollectStatistics = collectStatistics;
+	}
+	
+	/**
+	 * @return the statistics of the last build that collected them, or null.
+	 */
+	public BuildStatistics getBuildStatistics() {
+		return this.m_BuildStatistics;
+	}
+	
+	/**
+	 * @return the compiled form of the trained tree
+	 */
+	CompiledTree getCompiledTree() {
+		return this.m_CompiledTree;
+	}
+	
 	/* public methods */
 	
 	/**
@@ -123,132 +454,526 @@ public class DecisionTree implements Classifier {
 	
 	
 	/**
-	 * Return the classification of the instance.
+	 * Build a decision tree from training data that is already encoded, 
+	 * for example by the dataset cache. The rows of the data are reordered 
+	 * by the build, thus the data should not be used by another build 
+	 * at the same time.
+	 * @param data
+	 */
+	void buildClassifier(EncodedDataset data) {
+		
+		this.buildTree(data, null, this.getImpurityMode());
+	}
+	
+	
+	/**
+	 * Build a decision tree from an ARFF file that may be larger than the 
+	 * heap (out-of-core training). The file is read incrementally, twice: 
+	 * once for the cut points of the numeric attributes, from a uniform 
+	 * sample of their values, and once to encode the rows into a spill file. 
+	 * A node with more rows than the maximal rows in memory reads its spill 
+	 * file sequentially, and writes the rows of every child into a spill 
+	 * file of its own. A node with fewer rows is loaded into memory, and its 
+	 * subtree is built like buildClassifier does. The spill files are 
+	 * deleted as soon as they are read. The class attribute is the last one.
+	 * @param arffFile
+	 * @throws IOException
+	 */
+	public void buildClassifier(File arffFile) throws IOException {
+		EncodedDataset structure = this.sampleStructure(arffFile);
+		SpillFile spillFile = SpillFile.encode(arffFile, structure, this.getSpillDirectory());
+		
+		try {
+			this.buildTree(structure, spillFile, this.getImpurityMode());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			spillFile.delete();
+		}
+	}
+	
+	
+	/**
+	 * Update the tree with a single instance (Hoeffding tree). The tree 
+	 * must be built first, possibly from an empty set of instances that 
+	 * only gives the structure of the data. The instance is counted by the 
+	 * leaf that it reaches, and every grace period the leaf checks whether 
+	 * the gain of its best attribute beats the second best one by more 
+	 * than the Hoeffding bound. If so, and the split passes the Chi Square 
+	 * pruning of this tree, the leaf is split, and its children keep their 
+	 * own counts from then on. 
+	 * Updates must not run at the same time as each other, but other threads 
+	 * can classify while the tree is updated. An update that changes the 
+	 * structure of the tree (a split or a new branch) replaces the compiled 
+	 * form of the tree, and the threads use the previous one until then. 
+	 * Any other update publishes the return value and a copy of the counts 
+	 * of its leaf to the compiled form, instead of compiling the whole tree 
+	 * again.
+	 * @param instance
+	 */
+	@Override
+	public void updateClassifier(Instance instance) {
+		if (this.rootNode == null) {
+			throw new IllegalStateException("The tree must be built before it is updated");
+		}
+		
+		if (instance.classIsMissing()) {
+			// The instance can't be counted for any class value.
+			return;
+		}
+		
+		boolean isStructureChanged = false;
+		Node leafNode = this.rootNode;
+		
+		// Find the leaf of the instance. A value that has no branch yet 
+		// gets a new leaf.
+		while (leafNode.children != null) {
+			double value = instance.value(leafNode.attributeIndex);
+			Node childNode = null;
+			
+			if (!Double.isNaN(leafNode.threshold) && !Double.isNaN(value)) {
+				// The branches of a numeric split are below or above the threshold.
+				value = value <= leafNode.threshold ? 0 : 1;
+			}
+			
+			for (Node node : leafNode.children) {
+				if (Double.compare(node.branch, value) == 0) {
+					childNode = node;
+					break;
+				}
+			}
+			
+			if (childNode == null) {
+				childNode = new Node();
+				childNode.parent = leafNode;
+				childNode.branch = value;
+				childNode.returnValue = leafNode.returnValue;
+				
+				Node[] childrenNodes = Arrays.copyOf(leafNode.children, leafNode.children.length + 1);
+				childrenNodes[leafNode.children.length] = childNode;
+				leafNode.children = childrenNodes;
+				leafNode.attributeValuesBranches.add(value);
+				isStructureChanged = true;
+			}
+			
+			leafNode = childNode;
+		}
+		
+		if (leafNode.statistics == null) {
+			// The leaf keeps counting from its training class counts.
+			leafNode.statistics = new LeafStatistics(this.m_Header, leafNode.classCounts);
+			leafNode.classCounts = leafNode.statistics.classCounts;
+		}
+		
+		LeafStatistics statistics = leafNode.statistics;
+		statistics.add(instance);
+		
+		double returnValue = this.getMostPrevalentClassValue(statistics.classCounts);
+		leafNode.returnValue = returnValue;
+		
+		if (statistics.numSeen - statistics.numSeenAtLastCheck >= this.getGracePeriod()) {
+			statistics.numSeenAtLastCheck = statistics.numSeen;
+			isStructureChanged |= this.attemptIncrementalSplit(leafNode);
+		}
+		
+		if (isStructureChanged) {
+			// Publish the changed tree for classification.
+			this.m_CompiledTree = new CompiledTree(this.rootNode);
+		} else {
+			// The compiled tree has the structure of the tree, so the 
+			// instance reaches the same leaf in it. The running counts keep 
+			// changing, so the compiled tree gets a copy of them.
+			CompiledTree compiledTree = this.m_CompiledTree;
+			
+			compiledTree.patchLeaf(compiledTree.findNode(instance), returnValue, leafNode.classCounts.clone());
+		}
+	}
+	
+	
+	/**
+	 * Return the classification of the instance. The instance goes down the 
+	 * compiled form of the tree, as long as the current node has a branch 
+	 * for its attribute value. The tree is not changed, thus a trained tree 
+	 * can classify instances from many threads at once.
 	 * @param instance
 	 * @return double number, 0 or 1, represent the classified class.
 	 */
     @Override
 	public double classifyInstance(Instance instance) {
-    	Node currentNode = this.getRoot();
-    	double cuurentReturningValue = currentNode.returnValue;
-    	int currentAttributeIndex = currentNode.attributeIndex;
-    	int counter = 0;
-    	
-    	// if the node has children, send the current instance 
-    	// to the correspond child node.
-    	while (currentNode.children != null) {
-    		double instanceAttributeVal = instance.value(currentAttributeIndex);
-    		
-    		if (!(currentNode.attributeValuesBranches.contains(instanceAttributeVal))) {
-    			break;
-    			
-    		} else {
-    			
-    			for (Node childNode : currentNode.children) {
-    				if (childNode.branch == instanceAttributeVal) {
-    					currentNode = childNode;
-    					cuurentReturningValue = childNode.returnValue;
-    					currentAttributeIndex = currentNode.attributeIndex;
-    					
-    	    			// Update the height of the instance. We will use it 
-    	    			// for calc the max height & average height of the validation data.
-    	    			counter += 1;
-    				}
-    			}
-    		}
-    	}
+    	CompiledTree compiledTree = this.m_CompiledTree;
     	
-    	// Update the height of the field.
-    	this.setCountHeight(counter);
-
-    	return cuurentReturningValue;
+    	return compiledTree.returnValues[compiledTree.findNode(instance)];
+    }
+    
+    
+    /**
+     * Return the classification of the instance, together with the height 
+     * of its path in the tree. Like classifyInstance, this does not change 
+     * the tree and is safe to call from many threads at once.
+     * @param instance
+     * @return the classified class and the height of the instance.
+     */
+    @Override
+    public Prediction predict(Instance instance) {
+    	CompiledTree compiledTree = this.m_CompiledTree;
+    	int node = compiledTree.findNode(instance);
+    	
+    	return new Prediction(compiledTree.returnValues[node], compiledTree.depths[node]);
     }
+    
+    
+    /**
+     * Return the class probabilities of the instance, which are the class 
+     * value counts of the training instances of the node that classifies 
+     * it, normalized. Like classifyInstance, this does not change the tree.
+     * @param instance
+     * @return the probability of every class value
+     */
+	@Override
+	public double[] distributionForInstance(Instance instance) {
+		CompiledTree compiledTree = this.m_CompiledTree;
+		double[] distribution = new double[this.m_Header.numClasses()];
+		
+		writeDistribution(compiledTree, compiledTree.findNode(instance), distribution.length, distribution, 0);
+		
+		return distribution;
+	}
+	
+	
+	/**
+	 * Write the class probabilities of a block of instances into one array, 
+	 * like distributionForInstance, without allocating per instance. 
+	 * The probabilities of instance i are at [i * numClasses, (i + 1) * numClasses).
+	 * The instances are classified in parallel chunks, on the common fork 
+	 * join pool.
+	 * @param instances
+	 * @param distributions - receives the probabilities, at least 
+	 * numInstances * numClasses long
+	 */
+	public void distributionsForInstances(Instances instances, double[] distributions) {
+		int numClasses = this.m_Header.numClasses();
+		
+		if (distributions.length < (long) instances.numInstances() * numClasses) {
+			throw new IllegalArgumentException("Expected at least " + (long) instances.numInstances() * numClasses 
+					+ " probabilities, got " + distributions.length);
+		}
+		
+		ForkJoinPool.commonPool().invoke(new DistributionTask(this.m_CompiledTree, numClasses, 
+				instances, distributions, 0, instances.numInstances()));
+	}
+	
+	
+	/**
+	 * Write the normalized class value counts of a node. A node without 
+	 * training instances gives all of the probability to its return value, 
+	 * or the same probability to every class value if it has none (a tree 
+	 * that was built from no instances).
+	 * @param compiledTree
+	 * @param node
+	 * @param numClasses
+	 * @param distribution - receives the probabilities
+	 * @param offset - position of the first class value in the distribution
+	 */
+	private static void writeDistribution(CompiledTree compiledTree, int node, int numClasses, 
+			double[] distribution, int offset) {
+		int[] classCounts = compiledTree.classCounts(node);
+		double sum = 0;
+		
+		if (classCounts != null) {
+			for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+				distribution[offset + classIndex] = classCounts[classIndex];
+				sum += classCounts[classIndex];
+			}
+		}
+		
+		if (sum > 0) {
+			for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+				distribution[offset + classIndex] /= sum;
+			}
+		} else if (compiledTree.returnValues[node] >= 0) {
+			distribution[offset + (int) compiledTree.returnValues[node]] = 1;
+		} else {
+			Arrays.fill(distribution, offset, offset + numClasses, 1.0 / numClasses);
+		}
+	}
  
 
     /**
      * Builds the decision tree on given data set using either a recursive 
-     * or queue algorithm.
+     * or queue algorithm. The instances are encoded once into primitive 
+     * columns, and every node works on its own slice of their row indexes.
      * @param instance
      * @param impurityMode                       
      */
     public void buildTree(Instances instances, eImpurityMode impurityMode) {
+    	EncodedDataset data = new EncodedDataset(instances, this.getMaxBins());
+    	
+    	if (this.getDeduplicateRows()) {
+    		data = data.deduplicate();
+    	}
     	
-    	this.rootNode = buildTreeRec(null, instances, impurityMode, -1);                            
+    	this.buildTree(data, null, impurityMode);
     }
     
-   
-	/**
-     * Calculate the average error on a given instances set 
-     * (could be the training, test or validation set). The average error 
-     * is the total number of classification mistakes on the input instances 
-     * set divided by the number of instances in the input set.
-     * @param instances to operate on.
-     * @return average error classification error.
+    
+    /**
+     * Builds the decision tree on given encoded data set using either a 
+     * recursive or queue algorithm, or out of core from a spill file.
+     * @param data - the encoded training set, or only its structure if 
+     * the rows are spilled
+     * @param spillFile - the spilled rows of the training set, or null
+     * @param impurityMode
      */
-    public double calcAvgError(Instances instances) {
-    	int errorCounter = 0;
-    	int maxHeight = Integer.MIN_VALUE;
-    	int totalHeights = 0;
+    private void buildTree(EncodedDataset data, SpillFile spillFile, eImpurityMode impurityMode) {
+    	this.m_Header = data.header;
+    	this.m_Random = new Random(this.getSeed());
     	
-    	// Iterate through all instances, and count classification errors.
-    	for (int i = 0; i < instances.numInstances(); i++) {
-    		Instance instance = instances.instance(i);
-    		
-    		double classifyInstance = this.classifyInstance(instance);
+    	// Count the work of the build only if someone looks at it.
+    	TreeBuildEvent buildEvent = new TreeBuildEvent();
+    	BuildCounters counters = this.getCollectStatistics() || buildEvent.isEnabled() ? 
+    			new BuildCounters(data.columns.length) : null;
+    	long startTime = System.nanoTime();
+    	
+    	buildEvent.begin();
+    	this.m_Counters = counters;
+    	
+    	try {
+    		if (spillFile != null) {
+    			this.rootNode = buildTreeSpill(null, data, spillFile, impurityMode, -1, null, null);
+    		} else {
+    			this.rootNode = buildTreeNodes(null, data, impurityMode, -1, null, null);
+    		}
+    	} catch (IOException e) {
+    		throw new UncheckedIOException(e);
+    	} finally {
+    		this.m_Counters = null;
     		
-			// Sum all the height. We will use this data to calculate 
-			// the validation height average error.
-			totalHeights += this.getCountHeight();
-				
-			// Update the max height every iteration when updating 
-			// the 'count_heigh' field. 
-			if (this.getCountHeight() > maxHeight) {
-				maxHeight = this.getCountHeight();
-			}
-			
-			// Set the countHeight field to 0 for the next iteration.
-			this.setCountHeight(0);
-			
-  	        // Update the number of error counter.
-    		if (classifyInstance != instance.classValue()) {
-    			errorCounter++;
+    		if (this.m_BuildPool != null) {
+    			this.m_BuildPool.shutdown();
+    			this.m_BuildPool = null;
     		}
     	}
     	
-    	this.setCountHeight(maxHeight);
-    	this.setTotalHeights(totalHeights);
+    	// Flatten the tree for classification.
+    	this.m_CompiledTree = new CompiledTree(this.rootNode);
     	
-    	// Return average clasiification error. 
-    	return (double) errorCounter / instances.numInstances();
+    	if (counters != null) {
+    		this.m_BuildStatistics = counters.snapshot(System.nanoTime() - startTime);
+    		this.commitBuildEvent(buildEvent, spillFile != null ? spillFile.getNumRows() : data.numRows, 
+    				data.columns.length - 1, this.m_BuildStatistics);
+    	}
     }
-     
+    
     
     /**
-     * Calculates the instances entropy with respect to the their 
-     * different class value.
-     * @param  instances
-     * @return entropy value
+     * Read the structure of an ARFF file, and find the cut points of its 
+     * numeric attributes, in a pass over the file. The cut points are found 
+     * from a uniform sample (reservoir) of the values of every numeric 
+     * attribute, which is all of them if they fit the sample.
+     * @param arffFile
+     * @return encoded dataset without rows, with the structure and the 
+     * cut points of the file
+     * @throws IOException
      */
-    public double calcEntropy(Instances instances) { 
-    	// Get class distribution.
-    	Map<Double, Integer> classDistriburion = this.classDistribution(instances);
+    private EncodedDataset sampleStructure(File arffFile) throws IOException {
+    	ArffLoader loader = new ArffLoader();
+    	loader.setFile(arffFile);
+    	
+    	Instances header = loader.getStructure();
+    	header.setClassIndex(header.numAttributes() - 1);
+    	
+    	int numAttributes = header.numAttributes();
+    	double[][] samples = new double[numAttributes][];
+    	long[] numSeen = new long[numAttributes];
+    	boolean hasNumeric = false;
+    	
+    	for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+    		if (attributeIndex != header.classIndex() && header.attribute(attributeIndex).isNumeric()) {
+    			samples[attributeIndex] = new double[CUT_POINT_SAMPLE_SIZE];
+    			hasNumeric = true;
+    		}
+    	}
     	
-    	// Calculate the entropy (in it's negated sign).
-    	double entropy = 0;
+    	// Only the numeric attributes need a pass.
+    	Random random = new Random(this.getSeed());
+    	Instance instance;
     	
-    	for (Map.Entry<Double, Integer> classEntry : classDistriburion.entrySet()) {
-    		int distribution = classEntry.getValue();
-    		if (distribution == 0) {
-    			// Ignore non existent class values.
+    	while (hasNumeric && (instance = loader.getNextInstance(header)) != null) {
+    		if (instance.classIsMissing()) {
     			continue;
     		}
     		
-    		double probability = (double) distribution/instances.numInstances();
-    		entropy += probability * log2(probability);
+    		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+    			if (samples[attributeIndex] == null || instance.isMissing(attributeIndex)) {
+    				continue;
+    			}
+    			
+    			long seen = numSeen[attributeIndex]++;
+    			long slot = seen < CUT_POINT_SAMPLE_SIZE ? seen : (long) (random.nextDouble() * (seen + 1));
+    			
+    			if (slot < CUT_POINT_SAMPLE_SIZE) {
+    				samples[attributeIndex][(int) slot] = instance.value(attributeIndex);
+    			}
+    		}
+    	}
+    	
+    	double[][] cutPoints = new double[numAttributes][];
+    	
+    	for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+    		if (samples[attributeIndex] != null) {
+    			int numSamples = (int) Math.min(numSeen[attributeIndex], CUT_POINT_SAMPLE_SIZE);
+    			cutPoints[attributeIndex] = EncodedDataset.findCutPoints(samples[attributeIndex], numSamples, 
+    					this.getMaxBins());
+    		}
+    	}
+    	
+    	return new EncodedDataset(header, cutPoints, new short[numAttributes][], new short[0]);
+    }
+    
+    
+    /**
+     * Build the nodes of a subtree on given encoded data set with the split 
+     * engine and build mode of the tree, using either a recursive or queue 
+     * algorithm. This builds the whole tree, and the subtrees of the spill 
+     * nodes that are loaded into memory. The build pool is created on the 
+     * first parallel recursive build, and shut down by buildTree.
+     * @param parentNode - the parent of the subtree root, or null
+     * @param data - the rows of the subtree
+     * @param impurityMode
+     * @param branch - this argument keep the attribute value
+     * @param classCounts - the class value counts of the rows, or null 
+     * to count them
+     * @param contingencyTables - the contingency tables of the rows, or null 
+     * to count them
+     * @return the subtree
+     */
+    private Node buildTreeNodes(Node parentNode, EncodedDataset data, eImpurityMode impurityMode, 
+    		double branch, int[] classCounts, int[][][] contingencyTables) {
+    	if (this.getSplitEngine().equals(eSplitEngine.Bitmap) && data.weights == null) {
+    		// A bit is a row, so weighted rows are left to the row scans.
+    		BitmapIndex index = new BitmapIndex(data);
+    		
+    		return buildTreeBitmap(parentNode, index, index.allRows(), impurityMode, branch, 
+    				classCounts != null ? classCounts : index.countClasses());
+    	}
+    	
+    	if (this.getBuildMode().equals(eBuildMode.Queue) && this.getNumRandomAttributes() == 0) {
+    		// The queue algorithm always runs on the calling thread, and 
+    		// considers all of the attributes.
+    		return buildTreeQueue(parentNode, data, impurityMode, branch, classCounts);
+    	}
+    	
+    	if (this.getParallelism() > 1 && this.m_BuildPool == null) {
+    		this.m_BuildPool = new ForkJoinPool(this.getParallelism());
+    	}
+    	
+    	if (this.m_BuildPool != null) {
+    		return this.m_BuildPool.invoke(new SubtreeTask(parentNode, data, 0, data.numRows, impurityMode, 
+    				branch, classCounts, contingencyTables));
+    	}
+    	
+    	return buildTreeRec(parentNode, data, 0, data.numRows, impurityMode, branch, classCounts, contingencyTables);
+    }
+    
+    
+    /**
+     * Commit the flight recorder event of a build, if it is recorded.
+     * @param buildEvent - the event, which began with the build
+     * @param numRows - the number of training rows
+     * @param numAttributes - the number of attributes, but the class
+     * @param statistics - the statistics of the build
+     */
+    private void commitBuildEvent(TreeBuildEvent buildEvent, int numRows, int numAttributes, 
+    		BuildStatistics statistics) {
+    	buildEvent.end();
+    	
+    	if (buildEvent.shouldCommit()) {
+    		buildEvent.buildMode = this.getBuildMode().name();
+    		buildEvent.splitEngine = this.getSplitEngine().name();
+    		buildEvent.numRows = numRows;
+    		buildEvent.numAttributes = numAttributes;
+    		buildEvent.numNodes = statistics.getNumNodes();
+    		buildEvent.splitCandidates = statistics.getTotalSplitCandidates();
+    		buildEvent.rowsScanned = statistics.getRowsScanned();
+    		buildEvent.numChiPruned = statistics.getNumChiPruned();
+    		buildEvent.scoringTime = statistics.getScoringNanos();
+    		buildEvent.partitionTime = statistics.getPartitionNanos();
+    		buildEvent.peakFrontierSize = statistics.getPeakFrontierSize();
+    		buildEvent.commit();
     	}
+    }
+    
+   
+	/**
+     * Calculate the average error on a given instances set 
+     * (could be the training, test or validation set). The average error 
+     * is the total number of classification mistakes on the input instances 
+     * set divided by the number of instances in the input set.
+     * The max height and the total heights of the instances are kept in 
+     * the countHeight and totalHeights fields.
+     * @param instances to operate on.
+     * @return average error classification error.
+     */
+    public double calcAvgError(Instances instances) {
+    	EvaluationReport report = this.evaluate(instances);
+    	
+    	this.setCountHeight(report.getMaxDepth());
+    	this.setTotalHeights((int) report.getTotalDepth());
+    	
+    	// Return average clasiification error. 
+    	return report.getErrorRate();
+    }
+    
+    
+    /**
+     * Evaluate the tree on a given instances set. The instances are 
+     * classified in parallel chunks, on the common fork join pool, and 
+     * the counts of the chunks are merged into one report. 
+     * The tree is not changed by the evaluation.
+     * @param instances to operate on.
+     * @return report of the errors and the heights of the instances.
+     */
+    public EvaluationReport evaluate(Instances instances) {
+    	CompiledTree compiledTree = this.m_CompiledTree;
+    	long startTime = System.nanoTime();
+    	
+    	EvaluationCounts counts = ForkJoinPool.commonPool().invoke(
+    			new EvaluationTask(compiledTree, instances, null, 0, instances.numInstances()));
+    	
+    	return new EvaluationReport(counts, System.nanoTime() - startTime);
+    }
+    
+    
+    /**
+     * Evaluate the tree on an encoded data set (or a view of it), like 
+     * evaluate(Instances), straight from the encoded columns. When called 
+     * from a fork join task, the chunks run in the pool of the task.
+     * @param data to operate on.
+     * @return report of the errors and the heights of the instances.
+     */
+    EvaluationReport evaluate(EncodedDataset data) {
+    	CompiledTree compiledTree = this.m_CompiledTree;
+    	long startTime = System.nanoTime();
+    	EvaluationTask evaluationTask = new EvaluationTask(compiledTree, null, data, 0, data.numRows);
+    	
+    	EvaluationCounts counts = ForkJoinTask.inForkJoinPool() ? 
+    			evaluationTask.invoke() : ForkJoinPool.commonPool().invoke(evaluationTask);
+    	
+    	return new EvaluationReport(counts, System.nanoTime() - startTime);
+    }
+     
+    
+    /**
+     * Calculates the instances entropy with respect to the their 
+     * different class value.
+     * @param  instances
+     * @return entropy value
+     */
+    public double calcEntropy(Instances instances) { 
+    	// Get class distribution.
+    	int[] classCounts = this.classCounts(instances);
     	
-    	// Return the entropy (in it's current sign).
-    	return -entropy;
+    	return this.calcEntropy(classCounts, instances.numInstances());
     }
     
 
@@ -261,25 +986,9 @@ public class DecisionTree implements Classifier {
      */
     public double calcGini(Instances instances) { 
 		// Get class distribution
-		Map<Double, Integer> classDistribution = this.classDistribution(instances);
-		
-		// Calculate the gini.
-		double gini = 0;
+		int[] classCounts = this.classCounts(instances);
 		
-		for (Map.Entry<Double, Integer> classEntry : classDistribution.entrySet()) {
-			int distribution = classEntry.getValue();
-			if (distribution == 0) {
-				// Ignore non-existent class values.
-				continue;
-			}
-			
-			double probability = (double) distribution/instances.numInstances();
-			
-			gini += Math.pow(probability, 2);
-		}
-		
-		// Return gini.
-		return 1 - gini;
+		return this.calcGini(classCounts, instances.numInstances());
     }
     
 
@@ -291,39 +1000,68 @@ public class DecisionTree implements Classifier {
      * @return Chi Square Statistic
      */
     public double calcChiSquare(Instances instances, int attributeIndex) {
-    	// Split the instances according to the class values
-    	Map<Double, Integer> classDistribution = this.classDistribution(instances);   //  <'+' : 7> , <'-' : 19> 
-    	
-    	// Split by the required attribute.
-    	Map<Double, Instances> attributeSplit = this.splitByAttribute(instances, attributeIndex);  // <'hot': ins1, ins4, ins7> <'cold': ins2, ins3>
-    	
-    	double chiSquare = 0;
-    	
-    	// Iterate on every attribute value.
-    	for (Map.Entry<Double, Instances> attributeSplitEntry : attributeSplit.entrySet()) {
-    		Instances attributeValueInstances = attributeSplitEntry.getValue();
-    		
-    		// Calculte the formula for this attribute value, with every class value.
-    		Map<Double, Integer> attributeValueClassDistribution = this.classDistribution(attributeValueInstances); //  hot ===> <'+' : 1> , <'-' : 2>
-    		
-    		for (Map.Entry<Double, Integer> attributeValueClassDistributionEntry : attributeValueClassDistribution.entrySet()) {
-    			double classValue = attributeValueClassDistributionEntry.getKey();
-    			int classValueCount = attributeValueClassDistributionEntry.getValue();
-    			
-    			
-    			double expectation = attributeValueInstances.numInstances() * ((double) classDistribution.get(classValue) / instances.numInstances());
-    			
-    			if (expectation != 0 ) {
-        			chiSquare += Math.pow(classValueCount - expectation, 2) / expectation;
-
-    			}
-    		}
-    	}
+    	EncodedDataset data = new EncodedDataset(instances);
+    	int[] classCounts = this.countClasses(data, 0, data.numRows);
+    	int[][] contingencyTable = this.countContingencyTable(data, attributeIndex, 0, data.numRows);
     	
-    	return chiSquare;
+    	return this.calcChiSquare(contingencyTable, classCounts, data.numRows);
     }
     
     
+	/**
+	 * Derive a Chi Square pruned tree from this tree, without building it 
+	 * again. The chi square statistic and the degree of freedom of every 
+	 * split are kept in the nodes when the tree is built, thus the pruned 
+	 * tree is a copy of this tree, in which every split with a too low 
+	 * statistic is made a leaf. It is the same tree that buildClassifier 
+	 * would build with Chi pruning and the given cutoff. 
+	 * This tree should be built without pruning (a pruned tree can only 
+	 * be pruned further), and is not changed.
+	 * @param tableOfChiProb
+	 * @param PValueIndex
+	 * @return a new, built decision tree
+	 */
+	public DecisionTree prunedView(double[][] tableOfChiProb, int PValueIndex) {
+		DecisionTree prunedTree = new DecisionTree(this.getImpurityMode(), ePruningMode.Chi, 
+				tableOfChiProb, PValueIndex);
+		
+		prunedTree.m_Header = this.m_Header;
+		prunedTree.rootNode = prunedTree.prunedCopy(this.rootNode, null);
+		prunedTree.m_CompiledTree = new CompiledTree(prunedTree.rootNode);
+		
+		return prunedTree;
+	}
+	
+	
+	/**
+	 * Save the trained tree into a compact binary model file, that can be 
+	 * loaded back by MappedTreeModel.load and classified without this class.
+	 * @param fileName
+	 * @throws IOException
+	 */
+	public void saveModel(String fileName) throws IOException {
+		
+		MappedTreeModel.write(this.m_CompiledTree, new File(fileName));
+	}
+	
+	
+	/**
+	 * Derive a Chi Square pruned tree from this tree, like 
+	 * prunedView(tableOfChiProb, PValueIndex), for any p-value.
+	 * @param pValue - in (0, 1], where 1 does not prune
+	 * @return a new, built decision tree
+	 */
+	public DecisionTree prunedView(double pValue) {
+		DecisionTree prunedTree = new DecisionTree(this.getImpurityMode(), ePruningMode.Chi, pValue);
+		
+		prunedTree.m_Header = this.m_Header;
+		prunedTree.rootNode = prunedTree.prunedCopy(this.rootNode, null);
+		prunedTree.m_CompiledTree = new CompiledTree(prunedTree.rootNode);
+		
+		return prunedTree;
+	}
+	
+	
 	/**
 	 * Print the decision tree.
 	 */
@@ -342,261 +1080,1828 @@ public class DecisionTree implements Classifier {
      * As long as the instances are still impure, keep splitting them according
      * to the best possible splitting attribute (that results in the 
      * highest gini/information gain). Wich should be null for the root node.  
+     * The contingency tables of the children are counted by their parent, 
+     * except for the largest child, whose tables are the tables of the 
+     * parent minus the tables of its siblings. Thus, the rows of the 
+     * largest child are never scanned for its tables.
      * @param parentNode - the parent of the current node. 
-     * @param instances 
+     * @param data - the encoded training set
+     * @param from - first position of the node rows in the row index array
+     * @param to - end (exclusive) of the node rows in the row index array
      * @param eImpurityMode - can be gini or impurity
      * @param branch - this argument keep the attribute value
+     * @param classCounts - the class value counts of the node rows, from 
+     * the split table of the parent, or null to count them
+     * @param contingencyTables - the contingency tables of the node rows, 
+     * or null to count them
      * @return desicion tree with respect to the impurityMeasure has given as an argument.
      */
-	private Node buildTreeRec(Node parentNode, Instances instances, eImpurityMode impurityMode, double branch) {    
+	private Node buildTreeRec(Node parentNode, EncodedDataset data, int from, int to, eImpurityMode impurityMode, 
+			double branch, int[] classCounts, int[][][] contingencyTables) {
+		BuildCounters counters = this.m_Counters;
+		
+		if (counters == null) {
+			return this.buildSubtree(parentNode, data, from, to, impurityMode, branch, classCounts, contingencyTables);
+		}
+		
+		counters.numNodes.increment();
+		counters.openNode();
+		
+		try {
+			return this.buildSubtree(parentNode, data, from, to, impurityMode, branch, classCounts, contingencyTables);
+		} finally {
+			counters.closeNode();
+		}
+	}
+	
+	
+	
+	/**
+	 * Build the subtree of a node, for buildTreeRec, which counts the node.
+	 * @param parentNode - the parent of the current node. 
+	 * @param data - the encoded training set
+	 * @param from - first position of the node rows in the row index array
+	 * @param to - end (exclusive) of the node rows in the row index array
+	 * @param eImpurityMode - can be gini or impurity
+	 * @param branch - this argument keep the attribute value
+	 * @param classCounts - the class value counts of the node rows, or null 
+	 * to count them
+	 * @param contingencyTables - the contingency tables of the node rows, 
+	 * or null to count them
+	 * @return the subtree of the node
+	 */
+	private Node buildSubtree(Node parentNode, EncodedDataset data, int from, int to, eImpurityMode impurityMode, 
+			double branch, int[] classCounts, int[][][] contingencyTables) {
+		BuildCounters counters = this.m_Counters;
+		long scoringStart = counters != null ? System.nanoTime() : 0;
 		Node currentNode = new Node();
 	 
 		currentNode.parent = parentNode;
 		currentNode.branch = branch;                                                                               
 		
+		// Only the root counts its class values. Every other node got them 
+		// from the split of its parent, without touching its rows.
+		if (classCounts == null) {
+			classCounts = this.countClasses(data, from, to);
+		}
+		
+		// The weighted number of the node rows.
+		int numInstances = this.sum(classCounts);
+		
 		// Notice that even if the node is not a leaf, the return value
 		// is the most prevalent class value among it's set of instances.
-		currentNode.returnValue = this.getMostPrevalentClassValue(instances);
+		currentNode.returnValue = this.getMostPrevalentClassValue(classCounts);
+		currentNode.classCounts = classCounts;
 		
 		// Calculte current impurity.
 		double impurity = impurityMode.equals(eImpurityMode.Gini) ? 
-				calcGini(instances) : calcEntropy(instances);
+				calcGini(classCounts, numInstances) : calcEntropy(classCounts, numInstances);
 					
 		// If the instances are perfectly classified already, then we are done
 		// splitting this subset.
 		if (impurity == 0) {
+			if (counters != null) {
+				counters.scoringNanos.add(System.nanoTime() - scoringStart);
+			}
+			
+			return currentNode;
+		}
+		
+		// Else, count every attribute value against every class value of the 
+		// node rows (unless the parent did), and score every attribute by 
+		// the gain of splitting by it.
+		int numAttributes = data.columns.length;
+		double[] gains = new double[numAttributes];
+		int[] thresholdBins = new int[numAttributes];
+		boolean[] candidates = this.drawRandomAttributes(data, gains);
+		
+		if (contingencyTables == null) {
+			contingencyTables = new int[numAttributes][][];
+		}
+		
+		if (this.m_BuildPool != null && to - from >= MIN_ROWS_FOR_PARALLEL_SCORING) {
+			this.invokeInBuildPool(new AttributeScoringTask(data, from, to, impurityMode, 
+					impurity, candidates, contingencyTables, gains, thresholdBins, 0, numAttributes));
+		} else {
+			for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+				this.scoreAttribute(data, from, to, impurityMode, impurity, 
+						candidates, contingencyTables, gains, thresholdBins, attributeIndex);
+			}
+		}
+		
+		// Update best attribute index of this current node
+		int maxGainAttributeIndex = this.findMaxGainAttribute(data.classIndex, gains);
+	    currentNode.attributeIndex = maxGainAttributeIndex; 
+	    
+		int[][] contingencyTable = contingencyTables[maxGainAttributeIndex];
+		int thresholdBin = thresholdBins[maxGainAttributeIndex];
+		int[] valueGroups = this.groupValues(data, maxGainAttributeIndex, thresholdBin);
+		int[][] splitTable = this.groupTable(contingencyTable, valueGroups);
+		boolean splitAccepted = this.isSplitAccepted(currentNode, gains[maxGainAttributeIndex], 
+				splitTable, classCounts, numInstances);
+		
+		if (counters != null) {
+			counters.scoringNanos.add(System.nanoTime() - scoringStart);
+		}
+		
+		if (!splitAccepted) {
+			return currentNode;
+		}
+		
+		if (data.isNumeric(maxGainAttributeIndex)) {
+			currentNode.threshold = data.cutPoints[maxGainAttributeIndex][thresholdBin];
+		}
+		
+		// Split the instances according to the found attribute, by grouping 
+		// the node rows in place. The value indexes of every group of the 
+		// split follow each other, so every group is a slice of the rows.
+		int numGroups = splitTable.length;
+		int[] valueCounts = this.countValueRows(data, maxGainAttributeIndex, from, to, contingencyTable);
+		int[] groupSizes = new int[numGroups];
+		int[] groupFroms = new int[numGroups];
+		
+		for (int valueIndex = 0; valueIndex < valueCounts.length; valueIndex++) {
+			groupSizes[valueGroups[valueIndex]] += valueCounts[valueIndex];
+		}
+		
+		// The class value counts of the children are the rows of the split 
+		// table. They are copied, since the tables of the largest child are 
+		// calculated in place of the tables of this node.
+		int[][] groupClassCounts = new int[numGroups][];
+		
+		for (int group = 0; group < numGroups; group++) {
+			groupClassCounts[group] = splitTable[group].clone();
+		}
+		
+		long partitionStart = counters != null ? System.nanoTime() : 0;
+		int[] valueStarts = data.partition(maxGainAttributeIndex, from, to, valueCounts);
+		
+		for (int valueIndex = contingencyTable.length - 1; valueIndex >= 0; valueIndex--) {
+			groupFroms[valueGroups[valueIndex]] = valueStarts[valueIndex];
+		}
+		
+		if (counters != null) {
+			counters.partitionNanos.add(System.nanoTime() - partitionStart);
+			scoringStart = System.nanoTime();
+		}
+		
+		int[][][][] childrenTables = this.countChildrenTables(data, impurityMode, candidates, 
+				contingencyTables, groupFroms, groupSizes);
+		
+		if (counters != null) {
+			counters.scoringNanos.add(System.nanoTime() - scoringStart);
+		}
+				
+		// Recursively operate on the instances subsets and create 
+		// children nodes from them. Large subsets are built as fork join 
+		// tasks, and every child keeps the place of its attribute value.
+		List<Node> childrenNodes = new ArrayList<Node>();
+		List<SubtreeTask> subtreeTasks = new ArrayList<SubtreeTask>();
+		currentNode.attributeValuesBranches = new ArrayList<Double>();     
+		
+		for (int group = 0; group < numGroups; group++) {
+			if (groupSizes[group] == 0) {
+				// No instance has this attribute value.
+				continue;
+			}
+			
+			// Add the attribute value to the branches list of the node.
+			double attributeValue = this.branchValue(data, maxGainAttributeIndex, group, numGroups);
+			currentNode.attributeValuesBranches.add(attributeValue);
+			
+			int childFrom = groupFroms[group];
+			int childTo = childFrom + groupSizes[group];
+			
+			if (this.m_BuildPool != null && childTo - childFrom >= this.getMinRowsForParallelSubtree()) {
+				// The child is filled in when its task is joined.
+				SubtreeTask subtreeTask = new SubtreeTask(currentNode, data, childFrom, childTo, 
+						impurityMode, attributeValue, groupClassCounts[group], childrenTables[group]);
+				subtreeTask.fork();
+				subtreeTasks.add(subtreeTask);
+				childrenNodes.add(null);
+				
+			} else {
+				// Create child node and add it to the list of children.
+				Node childNode = this.buildTreeRec(currentNode, data, childFrom, childTo, 
+						impurityMode, attributeValue, groupClassCounts[group], childrenTables[group]);
+				
+				childrenNodes.add(childNode);
+				subtreeTasks.add(null);
+			}
+			
+			// The tables are not needed anymore by this node.
+			childrenTables[group] = null;
+		}
+		
+		// Wait for the children that are built by other tasks.
+		for (int i = 0; i < subtreeTasks.size(); i++) {
+			if (subtreeTasks.get(i) != null) {
+				childrenNodes.set(i, subtreeTasks.get(i).join());
+			}
+		}
+		
+		// Set children nodes of current node
+		currentNode.children = childrenNodes.toArray(new Node[childrenNodes.size()]);
+		
+		return currentNode;
+	}
+	
+	
+	
+	/**
+	 * Count the contingency tables of the children of a split, for all of 
+	 * the attributes. The tables of the largest child are the tables of 
+	 * the node minus the tables of the other children, and they are 
+	 * calculated in place of the node tables. When the splits choose from 
+	 * random attributes, the node only has the tables of its candidates, 
+	 * so the children count their own tables.
+	 * @param data - the encoded training set
+	 * @param impurityMode
+	 * @param candidates - the attributes that the node chose from, null for all
+	 * @param contingencyTables - the tables of the node, which are reused
+	 * @param groupFroms - first position of the rows of every child
+	 * @param groupSizes - number of rows of every child
+	 * @return the tables of every child, or null for the children that 
+	 * should count their own tables.
+	 */
+	private int[][][][] countChildrenTables(EncodedDataset data, eImpurityMode impurityMode, boolean[] candidates, 
+			int[][][] contingencyTables, int[] groupFroms, int[] groupSizes) {
+		int numGroups = groupSizes.length;
+		int numAttributes = contingencyTables.length;
+		int[][][][] childrenTables = new int[numGroups][][][];
+		
+		if (candidates != null) {
+			return childrenTables;
+		}
+		
+		int largestGroup = 0;
+		
+		for (int group = 1; group < numGroups; group++) {
+			if (groupSizes[group] > groupSizes[largestGroup]) {
+				largestGroup = group;
+			}
+		}
+		
+		for (int group = 0; group < numGroups; group++) {
+			if (group == largestGroup || groupSizes[group] == 0) {
+				continue;
+			}
+			
+			int groupFrom = groupFroms[group];
+			int groupTo = groupFrom + groupSizes[group];
+			childrenTables[group] = new int[numAttributes][][];
+			
+			if (this.m_BuildPool != null && groupSizes[group] >= MIN_ROWS_FOR_PARALLEL_SCORING) {
+				this.invokeInBuildPool(new AttributeScoringTask(data, groupFrom, groupTo, impurityMode, 
+						0, null, childrenTables[group], null, null, 0, numAttributes));
+			} else {
+				for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+					this.scoreAttribute(data, groupFrom, groupTo, impurityMode, 0, 
+							null, childrenTables[group], null, null, attributeIndex);
+				}
+			}
+			
+			// Subtract the child from the node, which leaves the largest child.
+			for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+				int[][] contingencyTable = contingencyTables[attributeIndex];
+				int[][] childTable = childrenTables[group][attributeIndex];
+				
+				if (contingencyTable == null) {
+					continue;
+				}
+				
+				for (int valueIndex = 0; valueIndex < contingencyTable.length; valueIndex++) {
+					for (int classIndex = 0; classIndex < data.numClasses; classIndex++) {
+						contingencyTable[valueIndex][classIndex] -= childTable[valueIndex][classIndex];
+					}
+				}
+			}
+		}
+		
+		childrenTables[largestGroup] = contingencyTables;
+		
+		return childrenTables;
+	}
+	
+	
+	
+	/**
+	 * Build the decision tree - Bitmap implementation.
+	 * The nodes are split like in the recursive implementation, but their 
+	 * contingency tables are counted from the bitmap index. A node is a 
+	 * bitmap of its rows, and every cell of its tables is a popcount of 
+	 * (node and class and attribute value) over the words that have any 
+	 * node row. Its children are the node bitmap AND the value bitmaps of 
+	 * their group. When the rows of a node get too sparse in their words, 
+	 * the subtree of the node is built by row scans, over a copy of its rows.
+	 * @param parentNode - the parent of the current node
+	 * @param index - the bitmap index of the training set
+	 * @param bitmap - the rows of the node
+	 * @param impurityMode - can be gini or impurity
+	 * @param branch - this argument keep the attribute value
+	 * @param classCounts - the class value counts of the node rows
+	 * @return desicion tree with respect to the impurityMeasure has given as an argument.
+	 */
+	private Node buildTreeBitmap(Node parentNode, BitmapIndex index, long[] bitmap, eImpurityMode impurityMode, 
+			double branch, int[] classCounts) {
+		BuildCounters counters = this.m_Counters;
+		
+		if (counters == null) {
+			return this.buildBitmapSubtree(parentNode, index, bitmap, impurityMode, branch, classCounts);
+		}
+		
+		counters.numNodes.increment();
+		counters.openNode();
+		
+		try {
+			return this.buildBitmapSubtree(parentNode, index, bitmap, impurityMode, branch, classCounts);
+		} finally {
+			counters.closeNode();
+		}
+	}
+	
+	
+	
+	/**
+	 * Build the subtree of a node, for buildTreeBitmap, which counts the node.
+	 * @param parentNode - the parent of the current node
+	 * @param index - the bitmap index of the training set
+	 * @param bitmap - the rows of the node
+	 * @param impurityMode - can be gini or impurity
+	 * @param branch - this argument keep the attribute value
+	 * @param classCounts - the class value counts of the node rows
+	 * @return the subtree of the node
+	 */
+	private Node buildBitmapSubtree(Node parentNode, BitmapIndex index, long[] bitmap, eImpurityMode impurityMode, 
+			double branch, int[] classCounts) {
+		EncodedDataset data = index.data;
+		BuildCounters counters = this.m_Counters;
+		long scoringStart = counters != null ? System.nanoTime() : 0;
+		int numInstances = this.sum(classCounts);
+		int[] activeWords = index.activeWords(bitmap);
+		
+		if (!index.isDense(numInstances, activeWords.length)) {
+			// Scanning the rows costs less than the popcounts from here on. 
+			// The rows are copied together, so that the scans are sequential.
+			EncodedDataset nodeData = new EncodedDataset(data, index.rows(bitmap, activeWords, numInstances)).compact();
+			
+			if (counters != null) {
+				counters.partitionNanos.add(System.nanoTime() - scoringStart);
+			}
+			
+			return this.buildSubtree(parentNode, nodeData, 0, nodeData.numRows, impurityMode, 
+					branch, classCounts, null);
+		}
+		
+		Node currentNode = new Node();
+		
+		currentNode.parent = parentNode;
+		currentNode.branch = branch;
+		currentNode.returnValue = this.getMostPrevalentClassValue(classCounts);
+		currentNode.classCounts = classCounts;
+		
+		double impurity = impurityMode.equals(eImpurityMode.Gini) ? 
+				calcGini(classCounts, numInstances) : calcEntropy(classCounts, numInstances);
+		
+		if (impurity == 0) {
+			if (counters != null) {
+				counters.scoringNanos.add(System.nanoTime() - scoringStart);
+			}
+			
 			return currentNode;
 		}
 		
-		// Else, find the best attribute for splitting all the instances.
-		int maxGainAttributeIndex = -1;
-		double maxGain = Double.NEGATIVE_INFINITY;
+		// Count every candidate attribute by popcount, and score it.
+		int numAttributes = data.columns.length;
+		double[] gains = new double[numAttributes];
+		int[] thresholdBins = new int[numAttributes];
+		int[][][] contingencyTables = new int[numAttributes][][];
+		boolean[] candidates = this.drawRandomAttributes(data, gains);
+		long[][] classWords = index.classWords(bitmap, activeWords);
+		
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			if (data.classIndex == attributeIndex || (candidates != null && !candidates[attributeIndex])) {
+				continue;
+			}
+			
+			contingencyTables[attributeIndex] = index.countContingencyTable(attributeIndex, activeWords, classWords);
+			gains[attributeIndex] = this.calcSplitGain(data, attributeIndex, contingencyTables[attributeIndex], 
+					impurityMode, impurity, numInstances, thresholdBins);
+		}
+		
+		int maxGainAttributeIndex = this.findMaxGainAttribute(data.classIndex, gains);
+	    currentNode.attributeIndex = maxGainAttributeIndex; 
+	    
+		int[][] contingencyTable = contingencyTables[maxGainAttributeIndex];
+		int thresholdBin = thresholdBins[maxGainAttributeIndex];
+		int[] valueGroups = this.groupValues(data, maxGainAttributeIndex, thresholdBin);
+		int[][] splitTable = this.groupTable(contingencyTable, valueGroups);
+		boolean splitAccepted = this.isSplitAccepted(currentNode, gains[maxGainAttributeIndex], 
+				splitTable, classCounts, numInstances);
+		
+		if (counters != null) {
+			counters.scoringNanos.add(System.nanoTime() - scoringStart);
+		}
+		
+		if (!splitAccepted) {
+			return currentNode;
+		}
+		
+		if (data.isNumeric(maxGainAttributeIndex)) {
+			currentNode.threshold = data.cutPoints[maxGainAttributeIndex][thresholdBin];
+		}
+		
+		// The value indexes of every group follow each other, from 
+		// groupFromValues[group] to groupFromValues[group + 1].
+		int numGroups = splitTable.length;
+		int[] groupFromValues = new int[numGroups + 1];
+		
+		for (int valueIndex = contingencyTable.length - 1; valueIndex >= 0; valueIndex--) {
+			groupFromValues[valueGroups[valueIndex]] = valueIndex;
+		}
+		
+		groupFromValues[numGroups] = contingencyTable.length;
+		
+		// The bitmap of a child is selected just before it is built, so 
+		// only the bitmaps of a single path are kept.
+		List<Node> childrenNodes = new ArrayList<Node>();
+		currentNode.attributeValuesBranches = new ArrayList<Double>();
+		
+		for (int group = 0; group < numGroups; group++) {
+			int[] groupClassCounts = splitTable[group].clone();
+			
+			if (this.sum(groupClassCounts) == 0) {
+				// No instance has this attribute value.
+				continue;
+			}
+			
+			double attributeValue = this.branchValue(data, maxGainAttributeIndex, group, numGroups);
+			currentNode.attributeValuesBranches.add(attributeValue);
+			
+			long partitionStart = counters != null ? System.nanoTime() : 0;
+			long[] childBitmap = index.selectRows(bitmap, activeWords, maxGainAttributeIndex, 
+					groupFromValues[group], groupFromValues[group + 1]);
+			
+			if (counters != null) {
+				counters.partitionNanos.add(System.nanoTime() - partitionStart);
+			}
+			
+			childrenNodes.add(this.buildTreeBitmap(currentNode, index, childBitmap, impurityMode, 
+					attributeValue, groupClassCounts));
+		}
+		
+		currentNode.children = childrenNodes.toArray(new Node[childrenNodes.size()]);
+		
+		return currentNode;
+	}
+	
+	
+	
+	/**
+	 * Build the decision tree - Out-of-core implementation.
+	 * The nodes are split like in the recursive implementation, but the rows 
+	 * of a node are kept in a spill file. A single sequential pass over the 
+	 * file writes the rows of every child into a spill file of its own, and 
+	 * counts the contingency tables of the child on the way, so every node 
+	 * reads its rows once. A node with at most the maximal rows in memory 
+	 * is loaded into memory, and its subtree is built by buildTreeNodes, 
+	 * like buildClassifier does, with the split engine, build mode and 
+	 * parallelism of the tree. The spill file of the node is deleted when 
+	 * the node is done with it.
+	 * @param parentNode - the parent of the current node
+	 * @param structure - encoded dataset without rows, with the structure 
+	 * of the training set
+	 * @param spillFile - the rows of the node
+	 * @param impurityMode - can be gini or impurity
+	 * @param branch - this argument keep the attribute value
+	 * @param classCounts - the class value counts of the node rows, or null 
+	 * to count them
+	 * @param contingencyTables - the contingency tables of the node rows, 
+	 * or null to count them
+	 * @return desicion tree with respect to the impurityMeasure has given as an argument.
+	 * @throws IOException
+	 */
+	private Node buildTreeSpill(Node parentNode, EncodedDataset structure, SpillFile spillFile, 
+			eImpurityMode impurityMode, double branch, int[] classCounts, int[][][] contingencyTables) 
+			throws IOException {
+		if (spillFile.getNumRows() <= this.getMaxRowsInMemory()) {
+			EncodedDataset data;
+			
+			try {
+				data = spillFile.load(structure);
+			} finally {
+				spillFile.delete();
+			}
+			
+			if (this.getDeduplicateRows()) {
+				data = data.deduplicate();
+			}
+			
+			// The in-memory builds count their own nodes.
+			return this.buildTreeNodes(parentNode, data, impurityMode, branch, classCounts, contingencyTables);
+		}
+		
+		BuildCounters counters = this.m_Counters;
+		
+		if (counters != null) {
+			counters.numNodes.increment();
+			counters.openNode();
+		}
+		
+		try {
+			return this.buildSpillSubtree(parentNode, structure, spillFile, impurityMode, branch, 
+					classCounts, contingencyTables);
+		} finally {
+			spillFile.delete();
+			
+			if (counters != null) {
+				counters.closeNode();
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 * Build the subtree of a node that is too large for the memory, for 
+	 * buildTreeSpill, which counts the node and deletes its spill file.
+	 * @param parentNode - the parent of the current node
+	 * @param structure - encoded dataset without rows
+	 * @param spillFile - the rows of the node
+	 * @param impurityMode - can be gini or impurity
+	 * @param branch - this argument keep the attribute value
+	 * @param classCounts - the class value counts of the node rows, or null
+	 * @param contingencyTables - the contingency tables of the node rows, or null
+	 * @return the subtree of the node
+	 * @throws IOException
+	 */
+	private Node buildSpillSubtree(Node parentNode, EncodedDataset structure, SpillFile spillFile, 
+			eImpurityMode impurityMode, double branch, int[] classCounts, int[][][] contingencyTables) 
+			throws IOException {
+		BuildCounters counters = this.m_Counters;
+		long scoringStart = counters != null ? System.nanoTime() : 0;
+		
+		// Only the root reads its rows for its counts. Every other node got 
+		// them from the pass of its parent.
+		if (contingencyTables == null) {
+			classCounts = new int[structure.numClasses];
+			contingencyTables = this.newContingencyTables(structure);
+			this.countSpillFile(structure, spillFile, classCounts, contingencyTables);
+		}
+		
+		Node currentNode = new Node();
+		int numInstances = this.sum(classCounts);
+		
+		currentNode.parent = parentNode;
+		currentNode.branch = branch;
+		currentNode.returnValue = this.getMostPrevalentClassValue(classCounts);
+		currentNode.classCounts = classCounts;
+		
+		double impurity = impurityMode.equals(eImpurityMode.Gini) ? 
+				calcGini(classCounts, numInstances) : calcEntropy(classCounts, numInstances);
+		
+		if (impurity == 0) {
+			if (counters != null) {
+				counters.scoringNanos.add(System.nanoTime() - scoringStart);
+			}
+			
+			return currentNode;
+		}
+		
+		int numAttributes = structure.columns.length;
+		double[] gains = new double[numAttributes];
+		int[] thresholdBins = new int[numAttributes];
+		boolean[] candidates = this.drawRandomAttributes(structure, gains);
+		
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			if (structure.classIndex == attributeIndex || (candidates != null && !candidates[attributeIndex])) {
+				continue;
+			}
+			
+			gains[attributeIndex] = this.calcSplitGain(structure, attributeIndex, contingencyTables[attributeIndex], 
+					impurityMode, impurity, numInstances, thresholdBins);
+		}
+		
+		int maxGainAttributeIndex = this.findMaxGainAttribute(structure.classIndex, gains);
+	    currentNode.attributeIndex = maxGainAttributeIndex; 
+	    
+		int[][] contingencyTable = contingencyTables[maxGainAttributeIndex];
+		int thresholdBin = thresholdBins[maxGainAttributeIndex];
+		int[] valueGroups = this.groupValues(structure, maxGainAttributeIndex, thresholdBin);
+		int[][] splitTable = this.groupTable(contingencyTable, valueGroups);
+		boolean splitAccepted = this.isSplitAccepted(currentNode, gains[maxGainAttributeIndex], 
+				splitTable, classCounts, numInstances);
+		
+		if (counters != null) {
+			counters.scoringNanos.add(System.nanoTime() - scoringStart);
+		}
+		
+		if (!splitAccepted) {
+			return currentNode;
+		}
+		
+		if (structure.isNumeric(maxGainAttributeIndex)) {
+			currentNode.threshold = structure.cutPoints[maxGainAttributeIndex][thresholdBin];
+		}
+		
+		// Write the rows of every group into its own spill file, and count 
+		// the tables of the children on the way.
+		int numGroups = splitTable.length;
+		SpillFile[] groupFiles = new SpillFile[numGroups];
+		int[][][][] groupTables = new int[numGroups][][][];
+		List<Node> childrenNodes = new ArrayList<Node>();
+		currentNode.attributeValuesBranches = new ArrayList<Double>();
+		
+		try {
+			long partitionStart = counters != null ? System.nanoTime() : 0;
+			
+			this.partitionSpillFile(structure, spillFile, maxGainAttributeIndex, valueGroups, splitTable, 
+					groupFiles, groupTables);
+			spillFile.delete();
+			
+			if (counters != null) {
+				counters.partitionNanos.add(System.nanoTime() - partitionStart);
+			}
+			
+			for (int group = 0; group < numGroups; group++) {
+				if (groupFiles[group] == null) {
+					// No instance has this attribute value.
+					continue;
+				}
+				
+				double attributeValue = this.branchValue(structure, maxGainAttributeIndex, group, numGroups);
+				currentNode.attributeValuesBranches.add(attributeValue);
+				
+				childrenNodes.add(this.buildTreeSpill(currentNode, structure, groupFiles[group], impurityMode, 
+						attributeValue, splitTable[group].clone(), groupTables[group]));
+				
+				// The tables are not needed anymore by this node.
+				groupTables[group] = null;
+			}
+		} finally {
+			for (SpillFile groupFile : groupFiles) {
+				if (groupFile != null) {
+					groupFile.delete();
+				}
+			}
+		}
+		
+		currentNode.children = childrenNodes.toArray(new Node[childrenNodes.size()]);
+		
+		return currentNode;
+	}
+	
+	
+	
+	/**
+	 * @param structure - encoded dataset without rows
+	 * @return empty contingency tables of all of the attributes but the class
+	 */
+	private int[][][] newContingencyTables(EncodedDataset structure) {
+		int[][][] contingencyTables = new int[structure.columns.length][][];
+		
+		for (int attributeIndex = 0; attributeIndex < contingencyTables.length; attributeIndex++) {
+			if (attributeIndex != structure.classIndex) {
+				contingencyTables[attributeIndex] = new int[structure.numValues[attributeIndex]][structure.numClasses];
+			}
+		}
+		
+		return contingencyTables;
+	}
+	
+	
+	
+	/**
+	 * Count the class values and the contingency tables of all of the 
+	 * attributes, in a single pass over a spill file.
+	 * @param structure - encoded dataset without rows
+	 * @param spillFile - the rows to count
+	 * @param classCounts - receives the class value counts
+	 * @param contingencyTables - receives the counts of every attribute
+	 * @throws IOException
+	 */
+	private void countSpillFile(EncodedDataset structure, SpillFile spillFile, int[] classCounts, 
+			int[][][] contingencyTables) throws IOException {
+		short[] row = new short[structure.columns.length];
+		
+		spillFile.openReading();
+		
+		try {
+			while (spillFile.read(row)) {
+				int classValue = row[structure.classIndex];
+				classCounts[classValue]++;
+				
+				for (int attributeIndex = 0; attributeIndex < row.length; attributeIndex++) {
+					if (attributeIndex != structure.classIndex) {
+						contingencyTables[attributeIndex][row[attributeIndex]][classValue]++;
+					}
+				}
+			}
+		} finally {
+			spillFile.closeReading();
+		}
+		
+		if (this.m_Counters != null) {
+			this.m_Counters.rowsScanned.add((long) spillFile.getNumRows() * (row.length - 1));
+		}
+	}
+	
+	
+	
+	/**
+	 * Write the rows of a spill file into the spill files of the groups of 
+	 * a split, in a single pass, and count the contingency tables of every 
+	 * group. Only the groups that have rows get a file.
+	 * @param structure - encoded dataset without rows
+	 * @param spillFile - the rows of the node
+	 * @param attributeIndex - the attribute of the split
+	 * @param valueGroups - group of every value index
+	 * @param splitTable - group x class value counts
+	 * @param groupFiles - receives the spill file of every group
+	 * @param groupTables - receives the contingency tables of every group
+	 * @throws IOException
+	 */
+	private void partitionSpillFile(EncodedDataset structure, SpillFile spillFile, int attributeIndex, 
+			int[] valueGroups, int[][] splitTable, SpillFile[] groupFiles, int[][][][] groupTables) 
+			throws IOException {
+		short[] row = new short[structure.columns.length];
+		
+		for (int group = 0; group < splitTable.length; group++) {
+			if (this.sum(splitTable[group]) > 0) {
+				groupFiles[group] = new SpillFile(this.getSpillDirectory(), row.length);
+				groupTables[group] = this.newContingencyTables(structure);
+			}
+		}
+		
+		spillFile.openReading();
+		
+		try {
+			while (spillFile.read(row)) {
+				int group = valueGroups[row[attributeIndex]];
+				int classValue = row[structure.classIndex];
+				int[][][] contingencyTables = groupTables[group];
+				
+				groupFiles[group].write(row);
+				
+				for (int otherIndex = 0; otherIndex < row.length; otherIndex++) {
+					if (otherIndex != structure.classIndex) {
+						contingencyTables[otherIndex][row[otherIndex]][classValue]++;
+					}
+				}
+			}
+		} finally {
+			spillFile.closeReading();
+		}
+		
+		for (SpillFile groupFile : groupFiles) {
+			if (groupFile != null) {
+				groupFile.closeWriting();
+			}
+		}
+		
+		if (this.m_Counters != null) {
+			this.m_Counters.rowsScanned.add((long) spillFile.getNumRows() * (row.length - 1));
+		}
+	}
+	
+	
+	
+	/**
+	 * Run a task in the build pool, from a task of the pool or from outside.
+	 * @param task
+	 */
+	private void invokeInBuildPool(ForkJoinTask<?> task) {
+		if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		} else {
+			this.m_BuildPool.invoke(task);
+		}
+	}
+
+	
+	
+    /**
+     * Build the decision tree - Queue implementation.
+     * The tree is built level by level. The nodes that are still impure in 
+     * the current level are kept in a frontier, and every row of the training 
+     * set knows its frontier slot. A single pass over every attribute column 
+     * counts the contingency tables of all of the frontier nodes, and the 
+     * nodes are then split (or left as leaves) exactly like in the recursive 
+     * implementation. The children class counts are taken from the contingency 
+     * table of their parent, so only the root class counts are scanned for.
+     * @param parentNode - the parent of the root, or null
+     * @param data - the encoded training set
+     * @param impurityMode - can be gini or impurity
+     * @param branch - this argument keep the attribute value of the root
+     * @param rootClassCounts - the class value counts of the root rows, or 
+     * null to count them
+     * @return desicion tree with respect to the impurityMeasure has given as an argument.
+     */
+	private Node buildTreeQueue(Node parentNode, EncodedDataset data, eImpurityMode impurityMode, 
+			double branch, int[] rootClassCounts) {
+		int numAttributes = data.columns.length;
+		short[] classColumn = data.classColumn;
+		
+		Node rootNode = new Node();
+		rootNode.parent = parentNode;
+		rootNode.branch = branch;
+		
+		BuildCounters counters = this.m_Counters;
+		List<Node> frontier = new ArrayList<Node>();
+		List<int[]> frontierClassCounts = new ArrayList<int[]>();
+		frontier.add(rootNode);
+		frontierClassCounts.add(rootClassCounts != null ? rootClassCounts : 
+				this.countClasses(data, 0, data.numRows));
+		
+		// The frontier slot of every row position, or -1 once the row 
+		// reached a leaf. All of the rows start at the root.
+		int[] rows = data.rows;
+		int[] rowSlots = new int[data.numRows];
+		
+		while (!frontier.isEmpty()) {
+			int numSlots = frontier.size();
+			long scoringStart = counters != null ? System.nanoTime() : 0;
+			
+			if (counters != null) {
+				counters.numNodes.add(numSlots);
+				counters.updateFrontier(numSlots);
+			}
+			
+			double[] impurities = new double[numSlots];
+			int[][][][] contingencyTables = new int[numSlots][][][];
+			
+			// Set the return value of every frontier node, and find the 
+			// nodes that are still impure.
+			for (int slot = 0; slot < numSlots; slot++) {
+				int[] classCounts = frontierClassCounts.get(slot);
+				int numInstances = this.sum(classCounts);
+				
+				frontier.get(slot).returnValue = this.getMostPrevalentClassValue(classCounts);
+				frontier.get(slot).classCounts = classCounts;
+				impurities[slot] = impurityMode.equals(eImpurityMode.Gini) ? 
+						calcGini(classCounts, numInstances) : calcEntropy(classCounts, numInstances);
+				
+				if (impurities[slot] != 0) {
+					contingencyTables[slot] = new int[numAttributes][][];
+					
+					for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+						if (attributeIndex != data.classIndex) {
+							contingencyTables[slot][attributeIndex] = 
+									new int[data.numValues[attributeIndex]][data.numClasses];
+						}
+					}
+				}
+			}
+			
+			// Count the contingency tables of all the impure frontier nodes, 
+			// with one pass over every attribute column.
+			for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+				short[] column = data.columns[attributeIndex];
+				
+				if (column == null) {
+					continue;
+				}
+				
+				if (counters != null) {
+					counters.rowsScanned.add(rowSlots.length);
+				}
+				
+				for (int position = 0; position < rowSlots.length; position++) {
+					int slot = rowSlots[position];
+					
+					if (slot >= 0 && contingencyTables[slot] != null) {
+						int row = rows[position];
+						contingencyTables[slot][attributeIndex][column[row]][classColumn[row]] += data.weight(row);
+					}
+				}
+			}
+			
+			// Split the frontier nodes, and collect their children as the 
+			// frontier of the next level.
+			List<Node> nextFrontier = new ArrayList<Node>();
+			List<int[]> nextFrontierClassCounts = new ArrayList<int[]>();
+			int[] splitAttributes = new int[numSlots];
+			int[][] childSlots = new int[numSlots][];
+			
+			for (int slot = 0; slot < numSlots; slot++) {
+				if (contingencyTables[slot] == null) {
+					// The node is pure, thus it is a leaf.
+					continue;
+				}
+				
+				Node currentNode = frontier.get(slot);
+				int[] classCounts = frontierClassCounts.get(slot);
+				int numInstances = this.sum(classCounts);
+				double[] gains = new double[numAttributes];
+				int[] thresholdBins = new int[numAttributes];
+				
+				for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+					int[][] contingencyTable = contingencyTables[slot][attributeIndex];
+					
+					if (contingencyTable != null) {
+						gains[attributeIndex] = this.calcSplitGain(data, attributeIndex, contingencyTable, 
+								impurityMode, impurities[slot], numInstances, thresholdBins);
+					}
+				}
+				
+				int maxGainAttributeIndex = this.findMaxGainAttribute(data.classIndex, gains);
+				int thresholdBin = thresholdBins[maxGainAttributeIndex];
+				int[] valueGroups = this.groupValues(data, maxGainAttributeIndex, thresholdBin);
+				int[][] splitTable = this.groupTable(contingencyTables[slot][maxGainAttributeIndex], valueGroups);
+				currentNode.attributeIndex = maxGainAttributeIndex;
+				
+				if (!this.isSplitAccepted(currentNode, gains[maxGainAttributeIndex], splitTable, classCounts, numInstances)) {
+					continue;
+				}
+				
+				if (data.isNumeric(maxGainAttributeIndex)) {
+					currentNode.threshold = data.cutPoints[maxGainAttributeIndex][thresholdBin];
+				}
+				
+				// Create a child for every group of the split that has instances.
+				List<Node> childrenNodes = new ArrayList<Node>();
+				int[] groupSlots = new int[splitTable.length];
+				currentNode.attributeValuesBranches = new ArrayList<Double>();
+				splitAttributes[slot] = maxGainAttributeIndex;
+				
+				for (int group = 0; group < splitTable.length; group++) {
+					if (this.sum(splitTable[group]) == 0) {
+						// No instance has this attribute value.
+						groupSlots[group] = -1;
+						continue;
+					}
+					
+					double attributeValue = this.branchValue(data, maxGainAttributeIndex, group, splitTable.length);
+					currentNode.attributeValuesBranches.add(attributeValue);
+					
+					Node childNode = new Node();
+					childNode.parent = currentNode;
+					childNode.branch = attributeValue;
+					childrenNodes.add(childNode);
+					
+					groupSlots[group] = nextFrontier.size();
+					nextFrontier.add(childNode);
+					nextFrontierClassCounts.add(splitTable[group]);
+				}
+				
+				// Map every value index to the slot of its child.
+				childSlots[slot] = new int[valueGroups.length];
+				
+				for (int valueIndex = 0; valueIndex < valueGroups.length; valueIndex++) {
+					childSlots[slot][valueIndex] = groupSlots[valueGroups[valueIndex]];
+				}
+				
+				currentNode.children = childrenNodes.toArray(new Node[childrenNodes.size()]);
+			}
+			
+			long partitionStart = counters != null ? System.nanoTime() : 0;
+			
+			// Move every row to the slot of its child in the next level.
+			for (int position = 0; position < rowSlots.length; position++) {
+				int slot = rowSlots[position];
+				
+				if (slot >= 0) {
+					rowSlots[position] = childSlots[slot] == null ? 
+							-1 : childSlots[slot][data.columns[splitAttributes[slot]][rows[position]]];
+				}
+			}
+			
+			if (counters != null) {
+				counters.scoringNanos.add(partitionStart - scoringStart);
+				counters.partitionNanos.add(System.nanoTime() - partitionStart);
+			}
+			
+			frontier = nextFrontier;
+			frontierClassCounts = nextFrontierClassCounts;
+		}
+		
+		return rootNode;
+	}
+	
+	
+	
+	/**
+	 * Draw the random attributes that a node chooses its split from, if 
+	 * the tree is set to choose from random attributes. The gains of the 
+	 * other attributes are set to negative infinity, so they are never 
+	 * the best attribute.
+	 * @param data - the encoded training set
+	 * @param gains - receives negative infinity for the other attributes
+	 * @return the candidate attributes, or null if all of them are candidates
+	 */
+	private boolean[] drawRandomAttributes(EncodedDataset data, double[] gains) {
+		int numAttributes = data.columns.length;
+		int numRandomAttributes = this.getNumRandomAttributes();
+		
+		if (numRandomAttributes == 0 || numRandomAttributes >= numAttributes - 1) {
+			return null;
+		}
+		
+		int[] attributeIndexes = new int[numAttributes - 1];
+		boolean[] candidates = new boolean[numAttributes];
+		
+		for (int attributeIndex = 0, i = 0; attributeIndex < numAttributes; attributeIndex++) {
+			if (attributeIndex != data.classIndex) {
+				attributeIndexes[i++] = attributeIndex;
+			}
+		}
+		
+		// Shuffle only the first attributes of the array into place.
+		for (int i = 0; i < numRandomAttributes; i++) {
+			int j = i + this.m_Random.nextInt(attributeIndexes.length - i);
+			int attributeIndex = attributeIndexes[j];
+			
+			attributeIndexes[j] = attributeIndexes[i];
+			attributeIndexes[i] = attributeIndex;
+			candidates[attributeIndex] = true;
+		}
+		
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			if (!candidates[attributeIndex]) {
+				gains[attributeIndex] = Double.NEGATIVE_INFINITY;
+			}
+		}
+		
+		return candidates;
+	}
+	
+	
+	
+	/**
+	 * Find the attribute with the highest gain. The gains are compared in 
+	 * attribute order, so ties (gains within GAIN_EPSILON of each other) 
+	 * go to the first attribute.
+	 * @param classIndex - index of the class attribute, which is skipped
+	 * @param gains - gain of every attribute
+	 * @return index of the best attribute for splitting
+	 */
+	private int findMaxGainAttribute(int classIndex, double[] gains) {
+		int maxGainAttributeIndex = -1;
+		double maxGain = Double.NEGATIVE_INFINITY;
+		
+		for (int attributeIndex = 0; attributeIndex < gains.length; attributeIndex++) {
+			if (classIndex == attributeIndex) {
+				// Do not try to split according to the attribute class value.  
+				continue;
+			}
+		
+			double currentGain = gains[attributeIndex];
+						
+			if (currentGain > maxGain + GAIN_EPSILON) {
+				// Update the best attribute and his gain.
+				maxGainAttributeIndex = attributeIndex;
+				maxGain = currentGain;
+			}			
+		}
+		
+		return maxGainAttributeIndex;
+	}
+	
+	
+	
+	/**
+	 * Check whether a leaf should be split by its running statistics, and 
+	 * split it if so. The leaf is split when the gain of its best attribute 
+	 * beats the gain of the second best one by more than the Hoeffding bound 
+	 * epsilon = sqrt(R^2 * ln(1 / delta) / 2n), where R is the range of the 
+	 * gain and n is the number of instances the leaf has seen, or when the 
+	 * bound is so small that the two attributes are a tie. 
+	 * The split must also be accepted like in a batch build.
+	 * @param leafNode
+	 * @return true if the leaf was split
+	 */
+	private boolean attemptIncrementalSplit(Node leafNode) {
+		LeafStatistics statistics = leafNode.statistics;
+		eImpurityMode impurityMode = this.getImpurityMode();
+		int numInstances = statistics.numSeen;
+		int numAttributes = statistics.contingencyTables.length;
+		int classIndex = this.m_Header.classIndex();
+		
+		double impurity = impurityMode.equals(eImpurityMode.Gini) ? 
+				calcGini(statistics.seenClassCounts, numInstances) : 
+				calcEntropy(statistics.seenClassCounts, numInstances);
+		
+		if (impurity == 0) {
+			return false;
+		}
+		
+		// Score every attribute by the gain of splitting by it.
+		double[] gains = new double[numAttributes];
+		
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			int[][] contingencyTable = statistics.contingencyTables[attributeIndex];
+			
+			if (contingencyTable != null) {
+				gains[attributeIndex] = impurityMode.equals(eImpurityMode.Gini) ? 
+						this.calcGiniGain(contingencyTable, impurity, numInstances) : 
+						this.calcInfoGain(contingencyTable, impurity, numInstances);
+			}
+		}
+		
+		int maxGainAttributeIndex = this.findMaxGainAttribute(classIndex, gains);
+		
+		// Find the second best gain. Not splitting at all gains nothing.
+		double secondMaxGain = 0;
+		
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			if (attributeIndex != classIndex && attributeIndex != maxGainAttributeIndex) {
+				secondMaxGain = Math.max(secondMaxGain, gains[attributeIndex]);
+			}
+		}
+		
+		// The entropy is at most log2 of the number of classes, and the 
+		// gini is at most 1.
+		double range = impurityMode.equals(eImpurityMode.Gini) ? 
+				1 : this.log2(Math.max(2, statistics.seenClassCounts.length));
+		double hoeffdingBound = Math.sqrt(range * range * Math.log(1 / this.getSplitConfidence()) 
+				/ (2.0 * numInstances));
+		
+		if (gains[maxGainAttributeIndex] - secondMaxGain <= hoeffdingBound 
+				&& hoeffdingBound >= this.getTieThreshold()) {
+			return false;
+		}
+		
+		int[][] splitTable = statistics.contingencyTables[maxGainAttributeIndex];
+		leafNode.attributeIndex = maxGainAttributeIndex;
+		
+		if (!this.isSplitAccepted(leafNode, gains[maxGainAttributeIndex], splitTable, 
+				statistics.seenClassCounts, numInstances)) {
+			return false;
+		}
+		
+		// Create a child for every attribute value that the leaf has seen. 
+		// Every child starts with the class counts of its attribute value.
+		List<Node> childrenNodes = new ArrayList<Node>();
+		leafNode.attributeValuesBranches = new ArrayList<Double>();
+		
+		for (int valueIndex = 0; valueIndex < splitTable.length; valueIndex++) {
+			if (this.sum(splitTable[valueIndex]) == 0) {
+				continue;
+			}
+			
+			double attributeValue = valueIndex == splitTable.length - 1 ? Double.NaN : valueIndex;
+			leafNode.attributeValuesBranches.add(attributeValue);
+			
+			Node childNode = new Node();
+			childNode.parent = leafNode;
+			childNode.branch = attributeValue;
+			childNode.returnValue = this.getMostPrevalentClassValue(splitTable[valueIndex]);
+			childNode.statistics = new LeafStatistics(this.m_Header, splitTable[valueIndex]);
+			childNode.classCounts = childNode.statistics.classCounts;
+			childrenNodes.add(childNode);
+		}
+		
+		leafNode.children = childrenNodes.toArray(new Node[childrenNodes.size()]);
+		leafNode.statistics = null;
+		
+		return true;
+	}
+	
+	
+	
+	/**
+	 * Decide whether a node should be split by its best attribute.
+	 * The chi square statistic and the degree of freedom of the split are 
+	 * kept in the node in any pruning mode, so pruned views can be derived 
+	 * from an unpruned tree.
+	 * @param currentNode
+	 * @param maxGain - gain of the best attribute
+	 * @param contingencyTable - contingency table of the best attribute
+	 * @param classCounts - class value counts of the node
+	 * @param numInstances
+	 * @return false if the node should be a leaf
+	 */
+	private boolean isSplitAccepted(Node currentNode, double maxGain, int[][] contingencyTable, 
+			int[] classCounts, int numInstances) {
+		NodeSplitEvent splitEvent = NodeSplitEvent.isRecorded() ? new NodeSplitEvent() : null;
+		boolean accepted = true;
+		
+		// Verify that we have indeed gained new information by splitting 
+		// the instances (according to any attribute). 
+		if (maxGain <= GAIN_EPSILON) {
+			// If we couldn't gain any information by splitting the instances
+			// according to any attribute, it means that we have "noise" 
+			// in the data, and further splitting is not possiblle.
+			// Thus, this node should be a leaf anyway.
+			accepted = false;
+		} else {
+			currentNode.degOfFreedom = this.degOfFreedom(contingencyTable);
+			currentNode.chiSquare = this.calcChiSquare(contingencyTable, classCounts, numInstances);
+			
+			// Check if required to prune by Chi Square.
+			if (this.m_PruningMode.equals(ePruningMode.Chi) && this.isPrunedByChi(currentNode)) {
+				accepted = false;
+				
+				if (this.m_Counters != null) {
+					this.m_Counters.numChiPruned.increment();
+				}
+			}
+		}
+		
+		if (splitEvent != null && splitEvent.shouldCommit()) {
+			splitEvent.numRows = numInstances;
+			splitEvent.attributeIndex = currentNode.attributeIndex;
+			splitEvent.gain = maxGain;
+			splitEvent.chiSquare = currentNode.chiSquare;
+			splitEvent.degOfFreedom = currentNode.degOfFreedom;
+			splitEvent.accepted = accepted;
+			splitEvent.commit();
+		}
+		
+		return accepted;
+	}
+	
+	
+	
+	/**
+	 * Check whether the split of the node is not significant, with respect 
+	 * to the table of chi square probabilities and the p-value index of 
+	 * this tree. Degrees of freedom that are not in the table (or trees 
+	 * without a table) use the calculated critical value of the p-value.
+	 * @param node - a node that was split
+	 * @return true if the node should be a leaf
+	 */
+	private boolean isPrunedByChi(Node node) {
+		int PValueIndex = this.getPValueIndex();
+		double[][] tableOfChiProb =  this.getTableOfChiProb();
+		double chiSquaredReferenceValue = tableOfChiProb != null && node.degOfFreedom <= tableOfChiProb.length ? 
+				tableOfChiProb[node.degOfFreedom - 1][PValueIndex] : 
+				this.m_ChiQuantiles.criticalValue(node.degOfFreedom);
+		
+		// Compare actual statistic calculation with the probability.
+		// If the Chi Square statistic is to low, prune by avoiding 
+		// further splituing the node.
+		return node.chiSquare < chiSquaredReferenceValue;
+	}
+	
+	
+	
+	/**
+	 * Copy the subtree of the given node, and prune the copy by Chi Square 
+	 * with respect to the table and p-value index of this tree. 
+	 * The given subtree is not changed.
+	 * @param node
+	 * @param parentNode - parent of the copy
+	 * @return root of the pruned copy
+	 */
+	private Node prunedCopy(Node node, Node parentNode) {
+		Node copyNode = new Node();
+		
+		copyNode.parent = parentNode;
+		copyNode.attributeIndex = node.attributeIndex;
+		copyNode.returnValue = node.returnValue;
+		copyNode.branch = node.branch;
+		copyNode.threshold = node.threshold;
+		copyNode.chiSquare = node.chiSquare;
+		copyNode.degOfFreedom = node.degOfFreedom;
+		copyNode.classCounts = node.classCounts;
+		
+		if (node.children == null || this.isPrunedByChi(node)) {
+			return copyNode;
+		}
+		
+		copyNode.attributeValuesBranches = new ArrayList<Double>(node.attributeValuesBranches);
+		copyNode.children = new Node[node.children.length];
+		
+		for (int i = 0; i < node.children.length; i++) {
+			copyNode.children[i] = this.prunedCopy(node.children[i], copyNode);
+		}
+		
+		return copyNode;
+	}
+	
+	
+	
+	/**
+	 * Calc the value of degree of freedom.
+	 * @param contingencyTable - attribute value x class value counts
+	 * @return degree of freedom value
+	 */
+	private int degOfFreedom(int[][] contingencyTable) {
+		int counter = 0;
+		
+		for (int valueIndex = 0; valueIndex < contingencyTable.length; valueIndex++) {
+			
+			int numOfIstrances = this.sum(contingencyTable[valueIndex]);
+			
+			if (numOfIstrances != 0) {
+				counter ++;
+			}
+		}
+		
+		int degOfFreedom = counter - 1;
+		
+		return degOfFreedom;
+	}
+	
+	
+	
+	/**
+	 * Calculates the chi square statistic of splitting the instances 
+	 * according to the attribute that the contingency table was counted for.
+	 * @param contingencyTable - attribute value x class value counts
+	 * @param classCounts - class value counts of the instances
+	 * @param numInstances
+	 * @return Chi Square Statistic
+	 */
+	private double calcChiSquare(int[][] contingencyTable, int[] classCounts, int numInstances) {
+		double chiSquare = 0;
+		
+		// Iterate on every attribute value.
+		for (int valueIndex = 0; valueIndex < contingencyTable.length; valueIndex++) {
+			int[] attributeValueClassCounts = contingencyTable[valueIndex];
+			int attributeValueCount = this.sum(attributeValueClassCounts);
+			
+			if (attributeValueCount == 0) {
+				// Attribute values that do not appear add nothing.
+				continue;
+			}
+			
+			// Calculte the formula for this attribute value, with every class value.
+			for (int classIndex = 0; classIndex < attributeValueClassCounts.length; classIndex++) {
+				double expectation = attributeValueCount * ((double) classCounts[classIndex] / numInstances);
+				
+				if (expectation != 0) {
+					chiSquare += Math.pow(attributeValueClassCounts[classIndex] - expectation, 2) / expectation;
+				}
+			}
+		}
+		
+		return chiSquare;
+	}
+	
+	
+	
+	/**
+	 * Count the class distribution of the node rows.
+	 * @param data - the encoded training set
+	 * @param from - first position of the node rows in the row index array
+	 * @param to - end (exclusive) of the node rows in the row index array
+	 * @return array that holds the count of each class value in the node rows.
+	 */
+	private int[] countClasses(EncodedDataset data, int from, int to) {
+		int[] rows = data.rows;
+		short[] classColumn = data.classColumn;
+		int[] classCounts = new int[data.numClasses];
 		
-		for (int attributeIndex = 0; attributeIndex < instances.numAttributes(); attributeIndex++) {
-			if (instances.classIndex() == attributeIndex) {
-				// Do not try to split according to the attribute class value.  
-				continue;
+		if (this.m_Counters != null) {
+			this.m_Counters.rowsScanned.add(to - from);
+		}
+		
+		if (data.weights != null) {
+			for (int position = from; position < to; position++) {
+				int row = rows[position];
+				classCounts[classColumn[row]] += data.weights[row];
 			}
+			
+			return classCounts;
+		}
 		
-			double currentGain = impurityMode.equals(eImpurityMode.Gini) ? 
-					this.calcGiniGain(instances, attributeIndex) : this.calcInfoGain(instances, attributeIndex);
-						
-			if (currentGain > maxGain) {
-				// Update the best attribute and his gain.
-				maxGainAttributeIndex = attributeIndex;
-				maxGain = currentGain;
-			}			
+		for (int position = from; position < to; position++) {
+			classCounts[classColumn[rows[position]]]++;
 		}
 		
-		// Update best attribute index of this current node
-	    currentNode.attributeIndex = maxGainAttributeIndex; 
+		return classCounts;
+	}
+	
+	
+	
+	/**
+	 * Count, in a single scan of the node rows, how many times each value 
+	 * of the attribute appears together with each class value. 
+	 * The result is indexed by [valueIndex][classIndex], where the last 
+	 * value index counts the missing values of the attribute.
+	 * @param data - the encoded training set
+	 * @param attributeIndex
+	 * @param from - first position of the node rows in the row index array
+	 * @param to - end (exclusive) of the node rows in the row index array
+	 * @return contingency table of the attribute
+	 */
+	private int[][] countContingencyTable(EncodedDataset data, int attributeIndex, int from, int to) {
+		int[] rows = data.rows;
+		short[] classColumn = data.classColumn;
+		short[] column = data.columns[attributeIndex];
+		int[][] contingencyTable = new int[data.numValues[attributeIndex]][data.numClasses];
 		
-		// Verify that we have indeed gained new information by splitting 
-		// the instances (according to any attribute). 
-		if (maxGain <= 0) {
-			// If we couldn't gain any information by splitting the instances
-			// according to any attribute, it means that we have "noise" 
-			// in the data, and further splitting is not possiblle.
-			// Thus, this node should be a leaf anyway.
-			return currentNode;
+		if (this.m_Counters != null) {
+			this.m_Counters.rowsScanned.add(to - from);
 		}
 		
-		// Check if required to prune by Chi Square.
-		if (this.m_PruningMode.equals(ePruningMode.Chi)) {
-			
-			int degOfFreedom = this.degOfFreedom(instances, maxGainAttributeIndex);      	
-			int PValueIndex = this.getPValueIndex();
-			double[][] tableOfChiProb =  this.getTableOfChiProb();
-			double chiSquaredReferenceValue = tableOfChiProb[degOfFreedom - 1][PValueIndex];
-						
-			// Compare actual statistic calculation with the probability.
-			if (this.calcChiSquare(instances, maxGainAttributeIndex) < chiSquaredReferenceValue) { 
-				
-				// Chi Square is statistic is to low. Prune by avoiding 
-				// further splituing the node.
-				return currentNode;
+		if (data.weights != null) {
+			for (int position = from; position < to; position++) {
+				int row = rows[position];
+				contingencyTable[column[row]][classColumn[row]] += data.weights[row];
 			}
+			
+			return contingencyTable;
 		}
 		
-		// Split the instances according to the found attribute. 
-		Map<Double, Instances> attributeSplit = this.splitByAttribute(instances, maxGainAttributeIndex);
-				
-		// Recursively operate on the instances subsets and create 
-		// children nodes from them.
-		List<Node> childrenNodes = new ArrayList<Node>();
-		currentNode.attributeValuesBranches = new ArrayList<Double>();     
+		// Count appearances of the different (attribute value, class value) pairs.
+		for (int position = from; position < to; position++) {
+			int row = rows[position];
+			contingencyTable[column[row]][classColumn[row]]++;
+		}
+		
+		return contingencyTable;
+	}
+	
+	
+	
+	/**
+	 * Count the node rows of every value index of the attribute, which is 
+	 * how the rows are partitioned. Without weights, these are the sums 
+	 * of the contingency table rows. Weighted rows are counted again.
+	 * @param data - the encoded training set
+	 * @param attributeIndex
+	 * @param from - first position of the node rows in the row index array
+	 * @param to - end (exclusive) of the node rows in the row index array
+	 * @param contingencyTable - the contingency table of the attribute
+	 * @return number of node rows of every value index
+	 */
+	private int[] countValueRows(EncodedDataset data, int attributeIndex, int from, int to, 
+			int[][] contingencyTable) {
+		int[] valueCounts = new int[contingencyTable.length];
 		
-		for (Map.Entry<Double, Instances> attributeValueEntry : attributeSplit.entrySet()) {
+		if (data.weights == null) {
+			for (int valueIndex = 0; valueIndex < contingencyTable.length; valueIndex++) {
+				valueCounts[valueIndex] = this.sum(contingencyTable[valueIndex]);
+			}
 			
-			// Add the attribute value to the branches list of the node.
-			double attributeValue = attributeValueEntry.getKey();
-			currentNode.attributeValuesBranches.add(attributeValue);
-																					     	                         	              
-			Instances attributeValueSubSet = attributeValueEntry.getValue();
+			return valueCounts;
+		}
 		
-			// Create child node and add it to the list of children.
-			Node childNode = this.buildTreeRec(currentNode, attributeValueSubSet, impurityMode, attributeValue);
+		int[] rows = data.rows;
+		short[] column = data.columns[attributeIndex];
 		
-			childrenNodes.add(childNode);
+		for (int position = from; position < to; position++) {
+			valueCounts[column[rows[position]]]++;
+		}
 		
+		return valueCounts;
+	}
+	
+	
+	
+	/**
+	 * Count the contingency table of the attribute over the node rows 
+	 * (unless it was counted already), and calculate the gini/information 
+	 * gain of splitting the rows by it. The class attribute, and the 
+	 * attributes that are not candidates, are skipped.
+	 * @param data - the encoded training set
+	 * @param from - first position of the node rows in the row index array
+	 * @param to - end (exclusive) of the node rows in the row index array
+	 * @param impurityMode - can be gini or impurity
+	 * @param impurity - impurity of the node rows
+	 * @param candidates - the attributes that the node chooses from, null for all
+	 * @param contingencyTables - receives the contingency table of the attribute
+	 * @param gains - receives the gain of the attribute, null to only count
+	 * @param thresholdBins - receives the threshold bin of a numeric attribute
+	 * @param attributeIndex
+	 */
+	private void scoreAttribute(EncodedDataset data, int from, int to, eImpurityMode impurityMode, 
+			double impurity, boolean[] candidates, int[][][] contingencyTables, double[] gains, 
+			int[] thresholdBins, int attributeIndex) {
+		if (data.classIndex == attributeIndex || (candidates != null && !candidates[attributeIndex])) {
+			return;
 		}
 		
-		// Set children nodes of current node
-		currentNode.children = childrenNodes.toArray(new Node[childrenNodes.size()]);
+		if (contingencyTables[attributeIndex] == null) {
+			contingencyTables[attributeIndex] = this.countContingencyTable(data, attributeIndex, from, to);
+		}
 		
-		return currentNode;
+		if (gains != null) {
+			// The weighted number of the node rows.
+			int numInstances = 0;
+			
+			for (int[] valueCounts : contingencyTables[attributeIndex]) {
+				numInstances += this.sum(valueCounts);
+			}
+			
+			gains[attributeIndex] = this.calcSplitGain(data, attributeIndex, contingencyTables[attributeIndex], 
+					impurityMode, impurity, numInstances, thresholdBins);
+		}
 	}
-
+	
 	
 	
 	/**
-	 * Calc the value of degree of freedom.
-	 * @param instances
+	 * Calculate the gini/information gain of splitting by the attribute. 
+	 * A nominal attribute is split by its values. A numeric attribute is 
+	 * split in two by a threshold between its bins (and its missing values 
+	 * are a third group), so every threshold is scored from the cumulative 
+	 * class counts of the bins, and the best threshold is kept.
+	 * @param data - the encoded training set
 	 * @param attributeIndex
-	 * @return degree of freedom value
+	 * @param contingencyTable - value index (or bin) x class value counts
+	 * @param impurityMode
+	 * @param impurity - impurity of the node rows
+	 * @param numInstances
+	 * @param thresholdBins - receives the last bin below the best threshold, 
+	 * for a numeric attribute
+	 * @return the gain of the attribute
 	 */
-	private int degOfFreedom(Instances instances, int attributeIndex) {
-		Map<Double, Instances> attributeSplit = this.splitByAttribute(instances, attributeIndex);  // <small : inst1, inst3 > , <medium : inst2, inst4>, <large : >
+	private double calcSplitGain(EncodedDataset data, int attributeIndex, int[][] contingencyTable, 
+			eImpurityMode impurityMode, double impurity, int numInstances, int[] thresholdBins) {
+		BuildCounters counters = this.m_Counters;
 		
-		int counter = 0;
+		if (!data.isNumeric(attributeIndex)) {
+			if (counters != null) {
+				counters.countSplitCandidates(attributeIndex, 1);
+			}
+			
+			return impurityMode.equals(eImpurityMode.Gini) ? 
+					this.calcGiniGain(contingencyTable, impurity, numInstances) : 
+					this.calcInfoGain(contingencyTable, impurity, numInstances);
+		}
+		
+		int numBins = contingencyTable.length - 1;
+		int numClasses = data.numClasses;
+		int[][] splitTable = new int[][] {new int[numClasses], new int[numClasses], contingencyTable[numBins]};
+		int[] belowCounts = splitTable[0];
+		int[] aboveCounts = splitTable[1];
+		int numBelow = 0;
+		int numAbove = 0;
+		
+		// Start with all of the bins above the threshold.
+		for (int bin = 0; bin < numBins; bin++) {
+			for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+				aboveCounts[classIndex] += contingencyTable[bin][classIndex];
+				numAbove += contingencyTable[bin][classIndex];
+			}
+		}
 		
-		for (Map.Entry<Double, Instances> attributeValueEntry : attributeSplit.entrySet()) {
+		double maxGain = 0;
+		int numThresholds = 0;
+		thresholdBins[attributeIndex] = 0;
+		
+		// Move the threshold up one bin at a time.
+		for (int bin = 0; bin < numBins - 1; bin++) {
+			int binCount = 0;
+			
+			for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+				belowCounts[classIndex] += contingencyTable[bin][classIndex];
+				aboveCounts[classIndex] -= contingencyTable[bin][classIndex];
+				binCount += contingencyTable[bin][classIndex];
+			}
 			
-			int numOfIstrances = attributeValueEntry.getValue().numInstances();
+			numBelow += binCount;
+			numAbove -= binCount;
 			
-			if (numOfIstrances != 0) {
-				counter ++;
+			if (numAbove == 0) {
+				break;
+			}
+			
+			if (binCount == 0 || numBelow == 0) {
+				// The same split as the previous threshold.
+				continue;
+			}
+			
+			double gain = impurityMode.equals(eImpurityMode.Gini) ? 
+					this.calcGiniGain(splitTable, impurity, numInstances) : 
+					this.calcInfoGain(splitTable, impurity, numInstances);
+			numThresholds++;
+			
+			if (gain > maxGain + GAIN_EPSILON) {
+				maxGain = gain;
+				thresholdBins[attributeIndex] = bin;
 			}
 		}
 		
-		int degOfFreedom = counter - 1;
+		if (counters != null) {
+			counters.countSplitCandidates(attributeIndex, numThresholds);
+		}
 		
-		return degOfFreedom;
+		return maxGain;
 	}
 	
 	
 	
 	/**
-	 * Split the instances according to the different attribute values.
-	 * Each attribute value is mapped to the subset of the instances 
-	 * that have that specific value.
-	 * @param instances
+	 * Map every value index of the attribute to its group in a split. 
+	 * A nominal attribute has a group for every value index. A numeric 
+	 * attribute has the groups of the bins up to the threshold (0), the bins 
+	 * above it (1) and the missing values (2).
+	 * @param data - the encoded training set
 	 * @param attributeIndex
-	 * @return HashMap that maps each attribute value to an instances object containing all the instances of that attribute value.
-	 */
-	private Map<Double, Instances> splitByAttribute(Instances instances, int attributeIndex) {
-		// Map of attribute values to instances with these attribute values.
-		Map<Double, Instances> attributeSplit = new HashMap<Double, Instances>();
-		
-		// Iterate through the instances and map the attribute values to them.
-		for (int i = 0 ; i < instances.numInstances(); i++) {
-			Instance instance = instances.instance(i);
-			double attributeValue = instance.value(attributeIndex);
-			
-			Instances attributeValueSubset = attributeSplit.get(attributeValue);
-			if (attributeValueSubset == null) {
-				// We haven't seen this attribute value before.
-				// Create an empty attribute value subset, and make 
-				// the current instance the only element in it.
-				attributeValueSubset = new Instances(instances, 0);
-				attributeValueSubset.add(instance);
-				attributeSplit.put(attributeValue, attributeValueSubset);
+	 * @param thresholdBin - last bin below the threshold of a numeric attribute
+	 * @return group of every value index
+	 */
+	private int[] groupValues(EncodedDataset data, int attributeIndex, int thresholdBin) {
+		int numValues = data.numValues[attributeIndex];
+		int[] valueGroups = new int[numValues];
+		
+		for (int valueIndex = 0; valueIndex < numValues; valueIndex++) {
+			if (!data.isNumeric(attributeIndex)) {
+				valueGroups[valueIndex] = valueIndex;
+			} else if (valueIndex == numValues - 1) {
+				valueGroups[valueIndex] = 2;
 			} else {
-				// Add current instance to that attribute value subset.
-				attributeValueSubset.add(instance);
+				valueGroups[valueIndex] = valueIndex <= thresholdBin ? 0 : 1;
 			}
-		}	
+		}
 		
-		return attributeSplit;
+		return valueGroups;
 	}
 	
 	
 	
 	/**
-	 * Calculate the information gain, if splitting the instances according to 
-	 * the given attribute. This is done by reducing the weighted entropy of 
-	 * the resulted subsets from the parent entropy.
-	 * @param instances
-	 * @param attributeIndex
-	 * @return information gain value
+	 * Sum the rows of a contingency table by their groups.
+	 * @param contingencyTable - value index x class value counts
+	 * @param valueGroups - group of every value index
+	 * @return group x class value counts, which is the given table if 
+	 * every value index is a group of its own
 	 */
-	private double calcInfoGain(Instances instances, int attributeIndex) {
-		double parentEntropy = calcEntropy(instances);
+	private int[][] groupTable(int[][] contingencyTable, int[] valueGroups) {
+		int numGroups = valueGroups[valueGroups.length - 1] + 1;
+		
+		if (numGroups == contingencyTable.length) {
+			return contingencyTable;
+		}
+		
+		int[][] groupTable = new int[numGroups][contingencyTable[0].length];
+		
+		for (int valueIndex = 0; valueIndex < contingencyTable.length; valueIndex++) {
+			for (int classIndex = 0; classIndex < contingencyTable[valueIndex].length; classIndex++) {
+				groupTable[valueGroups[valueIndex]][classIndex] += contingencyTable[valueIndex][classIndex];
+			}
+		}
 		
-		// Split parent instances according to given attribute to 
-		// different instances subsets.
-		Map <Double, Instances> attributeSplit = this.splitByAttribute(instances, attributeIndex);
+		return groupTable;
+	}
+	
+	
+	
+	/**
+	 * Return the branch value of a group of a split. It is the attribute 
+	 * value of a nominal attribute, and 0 (up to the threshold) or 1 (above 
+	 * it) for a numeric attribute. Missing values have a NaN branch.
+	 * @param data - the encoded training set
+	 * @param attributeIndex
+	 * @param group
+	 * @param numGroups
+	 * @return the branch value of the group
+	 */
+	private double branchValue(EncodedDataset data, int attributeIndex, int group, int numGroups) {
+		if (!data.isNumeric(attributeIndex)) {
+			return data.attributeValue(attributeIndex, group);
+		}
 		
-		// Calculate the weighted entropies of the subsets.
+		return group == numGroups - 1 ? Double.NaN : group;
+	}
+	
+	
+	
+	/**
+	 * Calculate the information gain, if splitting the instances according to 
+	 * the attribute that the contingency table was counted for. This is done 
+	 * by reducing the weighted entropy of the resulted subsets from the 
+	 * parent entropy. The weighted entropy of the subsets is
+	 * sum(n_v * log2(n_v) - sum(c * log2(c))) / n, over the subset sizes n_v 
+	 * and their class counts c, so no logarithm is calculated for counts 
+	 * in the n * log2(n) table.
+	 * @param contingencyTable - attribute value x class value counts
+	 * @param parentEntropy
+	 * @param numInstances
+	 * @return information gain value
+	 */
+	private double calcInfoGain(int[][] contingencyTable, double parentEntropy, int numInstances) {
+		// Calculate the weighted entropies of the subsets, times n.
 		double weightedSubsetsEntropies = 0;
 		
-		for (Map.Entry<Double, Instances> attributeValueEntry : attributeSplit.entrySet()) {
-			Instances attributeValueSubset = attributeValueEntry.getValue();
+		for (int valueIndex = 0; valueIndex < contingencyTable.length; valueIndex++) {
+			int[] subsetClassCounts = contingencyTable[valueIndex];
+			int subsetSize = 0;
+			double classesNLogN = 0;
 			
-			// Calculate subset weight.
-			double subsetWeight = (double) attributeValueSubset.numInstances() / instances.numInstances();
-			double subsetEntropy = this.calcEntropy(attributeValueSubset);
+			for (int classIndex = 0; classIndex < subsetClassCounts.length; classIndex++) {
+				subsetSize += subsetClassCounts[classIndex];
+				classesNLogN += nLog2N(subsetClassCounts[classIndex]);
+			}
 			
-			weightedSubsetsEntropies += subsetWeight * subsetEntropy;
+			weightedSubsetsEntropies += nLog2N(subsetSize) - classesNLogN;
 		}
 		
 		// Calculate and return the information gain.
-		return parentEntropy - weightedSubsetsEntropies;
+		return parentEntropy - weightedSubsetsEntropies / numInstances;
 	}
 	
 	
 	
 	/**
 	 * Calculate the gini gain, if splitting the instances according to 
-	 * the given attribute. This is done by reducing the weighted gini of 
-	 * the resulted subsets from the parent entropy.
-	 * @param instances
-	 * @param attributeIndex
+	 * the attribute that the contingency table was counted for. This is done 
+	 * by reducing the weighted gini of the resulted subsets from the parent gini.
+	 * The weighted gini of the subsets is sum(n_v - sum(c^2) / n_v) / n, 
+	 * over the subset sizes n_v and their class counts c, where the squares 
+	 * are summed exactly as integers.
+	 * @param contingencyTable - attribute value x class value counts
+	 * @param parentGini
+	 * @param numInstances
 	 * @return gini gain value
 	 */
-	private double calcGiniGain(Instances instances, int attributeIndex) {
-		double parentGini = calcGini(instances);
-		
-		// Split parent instances according to given attribute to 
-		// different instances subsets.
-		Map <Double, Instances> attributeSplit = this.splitByAttribute(instances, attributeIndex);
-		
-		// Calculate the weighted ginies of the subsets.
+	private double calcGiniGain(int[][] contingencyTable, double parentGini, int numInstances) {
+		// Calculate the weighted ginies of the subsets, times n.
 		double weightedSubsetsGinies = 0;
 		
-		for (Map.Entry<Double, Instances> attributeValueEntry : attributeSplit.entrySet()) {
-			Instances attributeValueSubset = attributeValueEntry.getValue();
+		for (int valueIndex = 0; valueIndex < contingencyTable.length; valueIndex++) {
+			int[] subsetClassCounts = contingencyTable[valueIndex];
+			int subsetSize = 0;
+			long sumOfSquares = 0;
 			
-			// Calculate subset weight.
-			double subsetWeight = (double) attributeValueSubset.numInstances() / instances.numInstances();
-			double subsetGini = this.calcGini(attributeValueSubset);
+			for (int classIndex = 0; classIndex < subsetClassCounts.length; classIndex++) {
+				long count = subsetClassCounts[classIndex];
+				subsetSize += count;
+				sumOfSquares += count * count;
+			}
 			
-			weightedSubsetsGinies += subsetWeight * subsetGini;
+			if (subsetSize != 0) {
+				weightedSubsetsGinies += subsetSize - (double) sumOfSquares / subsetSize;
+			}
 		}
 		
 		// Calculate and return the information gain.
-		return parentGini - weightedSubsetsGinies;
+		return parentGini - weightedSubsetsGinies / numInstances;
 	}
 	
 	
 	/**
-	 * Find the most prevalent class value among the given instances.
-	 * @param instances
+	 * Calculates the entropy of the given class counts, as 
+	 * (sum(c) * log2(n) - sum(c * log2(c))) / n.
+	 * @param classCounts
+	 * @param numInstances - sum of the class counts
+	 * @return entropy value
+	 */
+	private double calcEntropy(int[] classCounts, int numInstances) {
+		if (numInstances == 0) {
+			return 0;
+		}
+		
+		int sumOfCounts = 0;
+		double classesNLogN = 0;
+		
+		for (int classIndex = 0; classIndex < classCounts.length; classIndex++) {
+			sumOfCounts += classCounts[classIndex];
+			classesNLogN += nLog2N(classCounts[classIndex]);
+		}
+		
+		return (sumOfCounts * log2(numInstances) - classesNLogN) / numInstances;
+	}
+	
+	
+	/**
+	 * Calculates the gini of the given class counts, as (n - sum(c^2) / n) / n, 
+	 * which is 1 - sum(c^2) / n^2 written like a single subset of calcGiniGain. 
+	 * Thus, a split that keeps all of the instances together gains exactly 0.
+	 * @param classCounts
+	 * @param numInstances - sum of the class counts
+	 * @return the gini
+	 */
+	private double calcGini(int[] classCounts, int numInstances) {
+		if (numInstances == 0) {
+			// An empty set is pure, like its entropy says.
+			return 0;
+		}
+		
+		long sumOfSquares = 0;
+		
+		for (int classIndex = 0; classIndex < classCounts.length; classIndex++) {
+			long count = classCounts[classIndex];
+			sumOfSquares += count * count;
+		}
+		
+		return (numInstances - (double) sumOfSquares / numInstances) / numInstances;
+	}
+	
+	
+	/**
+	 * Return n * log2(n) of a count, from the table if the count is small 
+	 * enough. 0 * log2(0) is 0.
+	 * @param count
+	 * @return n * log2(n)
+	 */
+	private static double nLog2N(int count) {
+		
+		return count < N_LOG2_N.length ? N_LOG2_N[count] : count * (Math.log(count) / Math.log(2));
+	}
+	
+	
+	/**
+	 * Find the most prevalent class value among the given class counts.
+	 * @param classCounts
 	 * @return Most prevalent class value
 	 */
-	private double getMostPrevalentClassValue(Instances instances) {
-		Map<Double, Integer> classDistribution = this.classDistribution(instances);
+	private double getMostPrevalentClassValue(int[] classCounts) {
 		double mostPrevalentClassValue = -1;
 		int mostPrevalentClassValueCount = 0;
 		
 		// Find the most prevalent class value among the given instances.
-		for (Map.Entry<Double, Integer> classDistributionEntry : classDistribution.entrySet()) {
-			double classValue = classDistributionEntry.getKey();
-			int classValueCount = classDistributionEntry.getValue();
+		for (int classIndex = 0; classIndex < classCounts.length; classIndex++) {
+			int classValueCount = classCounts[classIndex];
 		
 			if (classValueCount > mostPrevalentClassValueCount) {
 				// Found more prevalent class value, update our findings.
-				mostPrevalentClassValue = classValue;
+				mostPrevalentClassValue = classIndex;
 				mostPrevalentClassValueCount = classValueCount;
 			}
 		}
@@ -607,54 +2912,38 @@ public class DecisionTree implements Classifier {
 	
 	/**
 	 * Compute the classes distribution among the given instances.
-	 * Each possible class value is mapped to its count among the given instances.
+	 * Each possible class value index holds its count among the given instances.
 	 * @param instances
-	 * @return HashMap that maps each class value to its count in the instances.
+	 * @return array that holds the count of each class value in the instances.
 	 */
-    private Map<Double, Integer> classDistribution(Instances instances) {
-	
-		return attributeDistribution(instances, instances.classIndex());
+    private int[] classCounts(Instances instances) {
+    	int[] classCounts = new int[instances.numClasses()];
+    	
+    	for (int i = 0; i < instances.numInstances(); i++) {
+    		Instance instance = instances.instance(i);
+    		
+    		if (!instance.classIsMissing()) {
+    			classCounts[(int) instance.classValue()]++;
+    		}
+    	}
+    	
+		return classCounts;
 	}
-
+	
 	
 	/**
-	 * Compute the attribute distribution among the given instances.
-	 * Each possible attribute value is mapped to its count among the given instances.
-	 * This can also be used to count the class distribution, if given the class index.
-	 * @param instances
-	 * @param attributeIndex
-	 * @return Map that maps each class value to its count in the instances.
+	 * Sum the given counts.
+	 * @param counts
+	 * @return sum of the counts
 	 */
-	private Map<Double, Integer> attributeDistribution(Instances instances, int attributeIndex) {
+	private int sum(int[] counts) {
+		int sum = 0;
 		
-		Map<Double, Integer> attributeDistribution = new HashMap<Double, Integer>();
-		
-		// Start by setting the mapping of all possible attribute values to 0
-		// NOTE: This works only for nominal attributes!!!
-		// (In case of non-nominal attributes, we will not have any zero-counted attribute value).
-		Attribute attribute = instances.attribute(attributeIndex);
-		
-		for (int i = 0; i < attribute.numValues(); i++) {
-			attributeDistribution.put((double)i, 0);
-		}
-		
-		// Count appearances of the different attribute values.
-		for (int i = 0; i < instances.numInstances(); i++) {
-			Instance instance = instances.instance(i);
-			double attributeValue = instance.value(attributeIndex);
-			
-			Integer count = attributeDistribution.get(attributeValue);
-			
-			if (count == null) {
-				// We haven't seen this attribute value before, set it's count to 1.
-				attributeDistribution.put(attributeValue, 1);
-			} else {
-				// Update this attribute value count.
-				attributeDistribution.put(attributeValue, count + 1);
-			}
+		for (int i = 0; i < counts.length; i++) {
+			sum += counts[i];
 		}
 		
-		return attributeDistribution;
+		return sum;
 	}
 	
 	
@@ -674,7 +2963,11 @@ public class DecisionTree implements Classifier {
 			
 		for (int i = 0; i < node.children.length; i++ ) {
 		
-			System.out.println(t + "If attribute" + node.attributeIndex + " = " + node.children[i].branch);
+			double branch = node.children[i].branch;
+			String condition = Double.isNaN(node.threshold) || Double.isNaN(branch) ? 
+					" = " + branch : (branch == 0 ? " <= " : " > ") + node.threshold;
+			
+			System.out.println(t + "If attribute" + node.attributeIndex + condition);
 		
 			
 			printTree(node.children[i], t + "\t");
@@ -695,15 +2988,237 @@ public class DecisionTree implements Classifier {
 	}
 
 	
-	@Override
-	public double[] distributionForInstance(Instance arg0) throws Exception {
-		// Don't change
-		return null;
+	/**
+	 * Scores the attributes of a range [fromAttribute, toAttribute) in a 
+	 * fork join pool, by halving the range until a single attribute is left.
+	 * Every attribute writes only its own entry of the results.
+	 */
+	private class AttributeScoringTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final EncodedDataset data;
+		private final int from;
+		private final int to;
+		private final eImpurityMode impurityMode;
+		private final double impurity;
+		private final boolean[] candidates;
+		private final int[][][] contingencyTables;
+		private final double[] gains;
+		private final int[] thresholdBins;
+		private final int fromAttribute;
+		private final int toAttribute;
+		
+		AttributeScoringTask(EncodedDataset data, int from, int to, eImpurityMode impurityMode, 
+				double impurity, boolean[] candidates, int[][][] contingencyTables, double[] gains, 
+				int[] thresholdBins, int fromAttribute, int toAttribute) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+			this.impurityMode = impurityMode;
+			this.impurity = impurity;
+			this.candidates = candidates;
+			this.contingencyTables = contingencyTables;
+			this.gains = gains;
+			this.thresholdBins = thresholdBins;
+			this.fromAttribute = fromAttribute;
+			this.toAttribute = toAttribute;
+		}
+		
+		@Override
+		protected void compute() {
+			if (this.toAttribute - this.fromAttribute == 1) {
+				scoreAttribute(this.data, this.from, this.to, this.impurityMode, this.impurity, 
+						this.candidates, this.contingencyTables, this.gains, this.thresholdBins, this.fromAttribute);
+				return;
+			}
+			
+			int middleAttribute = (this.fromAttribute + this.toAttribute) >>> 1;
+			
+			invokeAll(new AttributeScoringTask(this.data, this.from, this.to, this.impurityMode, 
+							this.impurity, this.candidates, this.contingencyTables, this.gains, 
+							this.thresholdBins, this.fromAttribute, middleAttribute),
+					new AttributeScoringTask(this.data, this.from, this.to, this.impurityMode, 
+							this.impurity, this.candidates, this.contingencyTables, this.gains, 
+							this.thresholdBins, middleAttribute, this.toAttribute));
+		}
 	}
-
+	
+	
+	/**
+	 * Builds the subtree of the node rows [from, to) in a fork join pool.
+	 * The node rows are not touched by any other task while it runs.
+	 */
+	private class SubtreeTask extends RecursiveTask<Node> {
+		private static final long serialVersionUID = 1L;
+		private final Node parentNode;
+		private final EncodedDataset data;
+		private final int from;
+		private final int to;
+		private final eImpurityMode impurityMode;
+		private final double branch;
+		private final int[] classCounts;
+		private final int[][][] contingencyTables;
+		
+		SubtreeTask(Node parentNode, EncodedDataset data, int from, int to, 
+				eImpurityMode impurityMode, double branch, int[] classCounts, int[][][] contingencyTables) {
+			this.parentNode = parentNode;
+			this.data = data;
+			this.from = from;
+			this.to = to;
+			this.impurityMode = impurityMode;
+			this.branch = branch;
+			this.classCounts = classCounts;
+			this.contingencyTables = contingencyTables;
+		}
+		
+		@Override
+		protected Node compute() {
+			
+			return buildTreeRec(this.parentNode, this.data, this.from, this.to, this.impurityMode, 
+					this.branch, this.classCounts, this.contingencyTables);
+		}
+	}
+	
+	
+	/**
+	 * Writes the class probabilities of the instances of a range [from, to) 
+	 * in a fork join pool, by halving the range until it is small enough 
+	 * to be a single chunk.
+	 */
+	private static class DistributionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int CHUNK_SIZE = 4096;
+		private final CompiledTree compiledTree;
+		private final int numClasses;
+		private final Instances instances;
+		private final double[] distributions;
+		private final int from;
+		private final int to;
+		
+		DistributionTask(CompiledTree compiledTree, int numClasses, Instances instances, double[] distributions, 
+				int from, int to) {
+			this.compiledTree = compiledTree;
+			this.numClasses = numClasses;
+			this.instances = instances;
+			this.distributions = distributions;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (this.to - this.from > CHUNK_SIZE) {
+				int middle = (this.from + this.to) >>> 1;
+				
+				invokeAll(new DistributionTask(this.compiledTree, this.numClasses, this.instances, 
+								this.distributions, this.from, middle),
+						new DistributionTask(this.compiledTree, this.numClasses, this.instances, 
+								this.distributions, middle, this.to));
+				return;
+			}
+			
+			// Clear the chunk, since a node without counts only sets its return value.
+			Arrays.fill(this.distributions, this.from * this.numClasses, this.to * this.numClasses, 0);
+			
+			for (int i = this.from; i < this.to; i++) {
+				int node = this.compiledTree.findNode(this.instances.instance(i));
+				
+				writeDistribution(this.compiledTree, node, this.numClasses, this.distributions, i * this.numClasses);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Evaluates the instances (or the encoded row positions) of a range [from, to) 
+	 * in a fork join pool, by halving the range until it is small enough 
+	 * to be a single chunk. Exactly one of instances and data is given.
+	 */
+	private static class EvaluationTask extends RecursiveTask<EvaluationCounts> {
+		private static final long serialVersionUID = 1L;
+		private static final int CHUNK_SIZE = 4096;
+		private final CompiledTree compiledTree;
+		private final Instances instances;
+		private final EncodedDataset data;
+		private final int from;
+		private final int to;
+		
+		EvaluationTask(CompiledTree compiledTree, Instances instances, EncodedDataset data, int from, int to) {
+			this.compiledTree = compiledTree;
+			this.instances = instances;
+			this.data = data;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected EvaluationCounts compute() {
+			if (this.to - this.from > CHUNK_SIZE) {
+				int middle = (this.from + this.to) >>> 1;
+				EvaluationTask secondHalf = new EvaluationTask(this.compiledTree, this.instances, this.data, 
+						middle, this.to);
+				secondHalf.fork();
+				
+				EvaluationCounts counts = new EvaluationTask(this.compiledTree, this.instances, this.data, 
+						this.from, middle).compute();
+				counts.add(secondHalf.join());
+				
+				return counts;
+			}
+			
+			int numClasses = this.instances != null ? this.instances.numClasses() : this.data.numClasses;
+			EvaluationCounts counts = new EvaluationCounts(numClasses, this.compiledTree.maxDepth);
+			
+			for (int i = this.from; i < this.to; i++) {
+				int node;
+				double classValue;
+				int weight = 1;
+				
+				if (this.instances != null) {
+					Instance instance = this.instances.instance(i);
+					node = this.compiledTree.findNode(instance);
+					classValue = instance.classValue();
+				} else {
+					int row = this.data.rows[i];
+					node = this.compiledTree.findNode(this.data, row);
+					classValue = this.data.classColumn[row];
+					weight = this.data.weight(row);
+				}
+				
+				double classifiedValue = this.compiledTree.returnValues[node];
+				
+				counts.numInstances += weight;
+				counts.depthCounts[this.compiledTree.depths[node]] += weight;
+				
+				if (classifiedValue != classValue) {
+					counts.numErrors += weight;
+				}
+				
+				if (!Double.isNaN(classValue) && classifiedValue >= 0) {
+					counts.confusionMatrix[(int) classValue][(int) classifiedValue] += weight;
+				}
+			}
+			
+			return counts;
+		}
+	}
+	
+	
+	/**
+	 * Return what the tree can learn from: nominal and numeric attributes, 
+	 * missing values, and a nominal class.
+	 */
 	@Override
 	public Capabilities getCapabilities() {
-		// Don't change
-		return null;
+		Capabilities capabilities = new Capabilities(this);
+		
+		capabilities.disableAll();
+		capabilities.enable(Capability.NOMINAL_ATTRIBUTES);
+		capabilities.enable(Capability.NUMERIC_ATTRIBUTES);
+		capabilities.enable(Capability.MISSING_VALUES);
+		capabilities.enable(Capability.NOMINAL_CLASS);
+		capabilities.enable(Capability.MISSING_CLASS_VALUES);
+		capabilities.setMinimumNumberInstances(0);
+		
+		return capabilities;
 	}
 }
\ No newline at end of file
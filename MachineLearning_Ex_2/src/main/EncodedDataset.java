@@ -0,0 +1,642 @@
+package main;
+
+import java.util.Arrays;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+
+/**
+ * Column oriented, primitive encoded copy of a training set.
+ * Every attribute is kept as a column of value indexes, in which the last
+ * value index of the attribute stands for a missing value.
+ * A numeric attribute is quantized once, into at most maxBins bins of
+ * about the same number of instances, and its value index is its bin.
+ * The bins are split only by thresholds, between the bins.
+ * The instances of a tree node are a slice [from, to) of one shared
+ * row index array, which is partitioned in place (like quicksort) when
+ * the node is split. Thus, the whole training takes O(rows) memory
+ * instead of a copy of the instances per tree level.
+ * A dataset may be deduplicated into its distinct rows, each with the
+ * number of its copies as an integer weight, and the builds count every
+ * row by its weight.
+ */
+final class EncodedDataset {
+	static final int DEFAULT_MAX_BINS = 64;
+	static final int MAX_NUM_VALUES = Short.MAX_VALUE - 1;   // of a nominal attribute, or the class.
+	
+	final Instances header;        // structure of the dataset, without instances.
+	final short[][] columns;       // [attributeIndex][row], null for the class attribute.
+	final short[] classColumn;     // class value index of every row.
+	final int[] numValues;         // number of value indexes (including missing) per attribute.
+	final double[][] cutPoints;    // upper bound of every bin but the last, null for nominal attributes.
+	final int numClasses;
+	final int classIndex;
+	final int numRows;
+	final int[] rows;              // shared row index array, partitioned by the nodes.
+	final int[] weights;           // number of copies of every row, null if every row is single.
+
+
+	/**
+	 * Constructor that encodes the given instances, with the default
+	 * number of bins for numeric attributes.
+	 * @param instances - instances with a nominal class index
+	 */
+	EncodedDataset(Instances instances) {
+
+		this(instances, DEFAULT_MAX_BINS);
+	}
+
+
+	/**
+	 * Constructor that encodes the given instances.
+	 * Instances with a missing class value are left out, since they can't
+	 * be counted for any class value.
+	 * @param instances - instances with a nominal class index
+	 * @param maxBins - maximal number of bins of a numeric attribute
+	 * @throws IllegalArgumentException if a nominal attribute or the class
+	 * has more values than a short value index can keep
+	 */
+	EncodedDataset(Instances instances, int maxBins) {
+		int numAttributes = instances.numAttributes();
+
+		checkNumValues(instances);
+
+		this.header = new Instances(instances, 0);
+		this.classIndex = instances.classIndex();
+		this.numClasses = instances.numClasses();
+		this.numValues = new int[numAttributes];
+		this.columns = new short[numAttributes][];
+		this.cutPoints = new double[numAttributes][];
+
+		// Count the instances that can be used for training.
+		int numRows = 0;
+
+		for (int i = 0; i < instances.numInstances(); i++) {
+			if (!instances.instance(i).classIsMissing()) {
+				numRows++;
+			}
+		}
+
+		this.numRows = numRows;
+		this.classColumn = new short[numRows];
+		this.rows = new int[numRows];
+		this.weights = null;
+
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			if (attributeIndex == this.classIndex) {
+				continue;
+			}
+
+			if (instances.attribute(attributeIndex).isNumeric()) {
+				this.cutPoints[attributeIndex] = findCutPoints(instances, attributeIndex, maxBins);
+				this.numValues[attributeIndex] = this.cutPoints[attributeIndex].length + 2;
+			} else {
+				// Keep one more value index for the missing values.
+				this.numValues[attributeIndex] = instances.attribute(attributeIndex).numValues() + 1;
+			}
+
+			this.columns[attributeIndex] = new short[numRows];
+		}
+
+		// Copy the instances into the columns.
+		int row = 0;
+
+		for (int i = 0; i < instances.numInstances(); i++) {
+			Instance instance = instances.instance(i);
+
+			if (instance.classIsMissing()) {
+				continue;
+			}
+
+			this.classColumn[row] = (short) instance.classValue();
+
+			for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+				short[] column = this.columns[attributeIndex];
+
+				if (column == null) {
+					continue;
+				}
+
+				column[row] = this.valueIndex(instance, attributeIndex);
+			}
+
+			this.rows[row] = row;
+			row++;
+		}
+	}
+
+
+	/**
+	 * Constructor that wraps columns that were already encoded, for example 
+	 * by a dataset cache. The columns are used as they are, not copied.
+	 * @param header - structure of the dataset, with a class index
+	 * @param columns - value index columns, null for the class attribute
+	 * @param classColumn - class value index column
+	 */
+	EncodedDataset(Instances header, short[][] columns, short[] classColumn) {
+
+		this(header, new double[header.numAttributes()][], columns, classColumn);
+	}
+
+
+	/**
+	 * Constructor that wraps columns that were already encoded, with the 
+	 * given cut points for the numeric attributes, for example by a spill 
+	 * file. The columns are used as they are, not copied.
+	 * @param header - structure of the dataset, with a class index
+	 * @param cutPoints - cut points of every numeric attribute, null for 
+	 * the nominal attributes
+	 * @param columns - value index columns, null for the class attribute
+	 * @param classColumn - class value index column
+	 * @throws IllegalArgumentException if a nominal attribute or the class
+	 * has more values than a short value index can keep
+	 */
+	EncodedDataset(Instances header, double[][] cutPoints, short[][] columns, short[] classColumn) {
+		int numAttributes = header.numAttributes();
+
+		checkNumValues(header);
+
+		this.header = header;
+		this.classIndex = header.classIndex();
+		this.numClasses = header.numClasses();
+		this.numValues = new int[numAttributes];
+		this.columns = columns;
+		this.classColumn = classColumn;
+		this.cutPoints = cutPoints;
+		this.numRows = classColumn.length;
+		this.rows = new int[this.numRows];
+		this.weights = null;
+
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			if (attributeIndex == this.classIndex) {
+				continue;
+			}
+
+			if (cutPoints[attributeIndex] != null) {
+				this.numValues[attributeIndex] = cutPoints[attributeIndex].length + 2;
+			} else {
+				// Keep one more value index for the missing values.
+				this.numValues[attributeIndex] = header.attribute(attributeIndex).numValues() + 1;
+			}
+		}
+
+		for (int row = 0; row < this.numRows; row++) {
+			this.rows[row] = row;
+		}
+	}
+
+
+	/**
+	 * Constructor of a view that shares the columns of the given dataset, 
+	 * but has its own row index array, for example a bootstrap sample in 
+	 * which a row may appear more than once, or the rows of a cross 
+	 * validation fold. Thus, builds of many views can run at the same time, 
+	 * while the columns are stored once. The rows of the view are the 
+	 * entries of its row index array.
+	 * @param data
+	 * @param rows - row index array, of rows of the given dataset
+	 */
+	EncodedDataset(EncodedDataset data, int[] rows) {
+		this.header = data.header;
+		this.columns = data.columns;
+		this.classColumn = data.classColumn;
+		this.numValues = data.numValues;
+		this.cutPoints = data.cutPoints;
+		this.numClasses = data.numClasses;
+		this.classIndex = data.classIndex;
+		this.numRows = rows.length;
+		this.rows = rows;
+		this.weights = data.weights;
+	}
+
+
+	/**
+	 * Constructor of a dataset with columns of its own, like the 
+	 * deduplicated form of the given dataset.
+	 * @param data
+	 * @param columns - value index columns of the rows
+	 * @param classColumn - class value index column of the rows
+	 * @param weights - number of copies of every row, or null
+	 */
+	private EncodedDataset(EncodedDataset data, short[][] columns, short[] classColumn, int[] weights) {
+		this.header = data.header;
+		this.columns = columns;
+		this.classColumn = classColumn;
+		this.numValues = data.numValues;
+		this.cutPoints = data.cutPoints;
+		this.numClasses = data.numClasses;
+		this.classIndex = data.classIndex;
+		this.numRows = classColumn.length;
+		this.rows = new int[this.numRows];
+		this.weights = weights;
+
+		for (int row = 0; row < this.numRows; row++) {
+			this.rows[row] = row;
+		}
+	}
+
+
+	/**
+	 * Check that the values of every nominal attribute and of the class,
+	 * and the missing value index, fit in a short value index.
+	 * @param header
+	 * @throws IllegalArgumentException if an attribute has too many values
+	 */
+	private static void checkNumValues(Instances header) {
+		for (int attributeIndex = 0; attributeIndex < header.numAttributes(); attributeIndex++) {
+			Attribute attribute = header.attribute(attributeIndex);
+
+			if (attribute.isNominal() && attribute.numValues() > MAX_NUM_VALUES) {
+				throw new IllegalArgumentException("Attribute " + attribute.name() + " has "
+						+ attribute.numValues() + " values, the encoding keeps at most " + MAX_NUM_VALUES);
+			}
+		}
+	}
+
+
+	/**
+	 * Collapse the identical rows of the dataset (same value indexes and
+	 * class value) into one row, weighted by the number of its copies.
+	 * A tree built from the deduplicated dataset is identical to a tree
+	 * built from this dataset, since the builds only look at the (weighted)
+	 * counts, and its build cost grows with the number of distinct rows.
+	 * The rows of a view are deduplicated as they are, so a row that the
+	 * view has twice gets twice the weight.
+	 * @return the deduplicated dataset, in the order of the first copy of
+	 * every row
+	 */
+	EncodedDataset deduplicate() {
+		// Open addressing hash table of the distinct rows, by their first
+		// position, plus one (0 is an empty entry).
+		int[] table = new int[Integer.highestOneBit(Math.max(1, this.numRows)) << 2];
+		int mask = table.length - 1;
+		int[] firstPositions = new int[this.numRows];
+		int[] weights = new int[this.numRows];
+		int numDistinctRows = 0;
+
+		for (int position = 0; position < this.numRows; position++) {
+			int row = this.rows[position];
+			int slot = this.hashRow(row) & mask;
+
+			while (table[slot] != 0 && !this.equalRows(this.rows[firstPositions[table[slot] - 1]], row)) {
+				slot = (slot + 1) & mask;
+			}
+
+			if (table[slot] == 0) {
+				firstPositions[numDistinctRows] = position;
+				table[slot] = ++numDistinctRows;
+			}
+
+			weights[table[slot] - 1] += this.weight(row);
+		}
+
+		// Copy the distinct rows into columns of their own.
+		short[][] columns = new short[this.columns.length][];
+		short[] classColumn = new short[numDistinctRows];
+
+		for (int attributeIndex = 0; attributeIndex < columns.length; attributeIndex++) {
+			if (this.columns[attributeIndex] != null) {
+				columns[attributeIndex] = new short[numDistinctRows];
+			}
+		}
+
+		for (int distinctRow = 0; distinctRow < numDistinctRows; distinctRow++) {
+			int row = this.rows[firstPositions[distinctRow]];
+			classColumn[distinctRow] = this.classColumn[row];
+
+			for (int attributeIndex = 0; attributeIndex < columns.length; attributeIndex++) {
+				if (columns[attributeIndex] != null) {
+					columns[attributeIndex][distinctRow] = this.columns[attributeIndex][row];
+				}
+			}
+		}
+
+		return new EncodedDataset(this, columns, classColumn, Arrays.copyOf(weights, numDistinctRows));
+	}
+
+
+	/**
+	 * Copy the rows of the dataset into columns of their own, in the order
+	 * of the row index array. The rows of a small view are scattered over
+	 * the long columns that it shares, so its scans miss the cache on
+	 * every row, while the scans of the copy are sequential.
+	 * @return the compact copy of the rows
+	 */
+	EncodedDataset compact() {
+		short[][] columns = new short[this.columns.length][];
+		short[] classColumn = new short[this.numRows];
+		int[] weights = this.weights != null ? new int[this.numRows] : null;
+
+		for (int attributeIndex = 0; attributeIndex < columns.length; attributeIndex++) {
+			short[] column = this.columns[attributeIndex];
+
+			if (column == null) {
+				continue;
+			}
+
+			columns[attributeIndex] = new short[this.numRows];
+
+			for (int position = 0; position < this.numRows; position++) {
+				columns[attributeIndex][position] = column[this.rows[position]];
+			}
+		}
+
+		for (int position = 0; position < this.numRows; position++) {
+			classColumn[position] = this.classColumn[this.rows[position]];
+
+			if (weights != null) {
+				weights[position] = this.weights[this.rows[position]];
+			}
+		}
+
+		return new EncodedDataset(this, columns, classColumn, weights);
+	}
+
+
+	/**
+	 * @param row
+	 * @return the weight of the row, 1 if the rows are not weighted
+	 */
+	int weight(int row) {
+
+		return this.weights == null ? 1 : this.weights[row];
+	}
+
+
+	/**
+	 * @param row
+	 * @return hash code of the value indexes and the class value of the row
+	 */
+	private int hashRow(int row) {
+		int hash = this.classColumn[row];
+
+		for (short[] column : this.columns) {
+			if (column != null) {
+				hash = 31 * hash + column[row];
+			}
+		}
+
+		// Spread the high bits into the low bits, which index the table.
+		return hash ^ (hash >>> 16);
+	}
+
+
+	/**
+	 * @param row
+	 * @param otherRow
+	 * @return true if the rows have the same value indexes and class value
+	 */
+	private boolean equalRows(int row, int otherRow) {
+		if (this.classColumn[row] != this.classColumn[otherRow]) {
+			return false;
+		}
+
+		for (short[] column : this.columns) {
+			if (column != null && column[row] != column[otherRow]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Quantize the numeric attributes again, by the values of the given
+	 * rows only, for example the training rows of a cross validation fold,
+	 * so that the bins don't depend on the values of the other rows.
+	 * Every row is encoded by the new bins, and the nominal columns are
+	 * shared with this dataset.
+	 * @param instances - the instances that this dataset was encoded from
+	 * @param binRows - the rows whose values give the bins
+	 * @param maxBins - maximal number of bins of a numeric attribute
+	 * @return the dataset of the same rows, with the new bins
+	 */
+	EncodedDataset rebin(Instances instances, int[] binRows, int maxBins) {
+		int numRows = this.classColumn.length;
+		int[] instanceIndexes = new int[numRows];
+		int row = 0;
+
+		// The instance of every row, which are the instances with a class value.
+		for (int i = 0; i < instances.numInstances(); i++) {
+			if (!instances.instance(i).classIsMissing()) {
+				instanceIndexes[row++] = i;
+			}
+		}
+
+		double[][] cutPoints = this.cutPoints.clone();
+		short[][] columns = this.columns.clone();
+		double[] values = new double[binRows.length];
+
+		for (int attributeIndex = 0; attributeIndex < columns.length; attributeIndex++) {
+			if (cutPoints[attributeIndex] == null) {
+				continue;
+			}
+
+			int numValues = 0;
+
+			for (int binRow : binRows) {
+				Instance instance = instances.instance(instanceIndexes[binRow]);
+
+				if (!instance.isMissing(attributeIndex)) {
+					values[numValues++] = instance.value(attributeIndex);
+				}
+			}
+
+			cutPoints[attributeIndex] = findCutPoints(values, numValues, maxBins);
+			columns[attributeIndex] = new short[numRows];
+
+			for (row = 0; row < numRows; row++) {
+				Instance instance = instances.instance(instanceIndexes[row]);
+
+				columns[attributeIndex][row] = instance.isMissing(attributeIndex) ?
+						(short) (cutPoints[attributeIndex].length + 1) :
+						(short) bin(cutPoints[attributeIndex], instance.value(attributeIndex));
+			}
+		}
+
+		return new EncodedDataset(this.header, cutPoints, columns, this.classColumn);
+	}
+
+
+	/**
+	 * @param attributeIndex
+	 * @return true if the attribute is numeric, thus its value indexes are bins
+	 */
+	boolean isNumeric(int attributeIndex) {
+
+		return this.cutPoints[attributeIndex] != null;
+	}
+
+
+	/**
+	 * Find the cut points that quantize a numeric attribute into at most
+	 * maxBins bins, of about the same number of instances. Every cut point
+	 * is the middle between two successive distinct values, so equal
+	 * values are always in the same bin.
+	 * @param instances
+	 * @param attributeIndex
+	 * @param maxBins
+	 * @return the increasing cut points
+	 */
+	private static double[] findCutPoints(Instances instances, int attributeIndex, int maxBins) {
+		double[] values = new double[instances.numInstances()];
+		int numValues = 0;
+
+		for (int i = 0; i < instances.numInstances(); i++) {
+			Instance instance = instances.instance(i);
+
+			if (!instance.classIsMissing() && !instance.isMissing(attributeIndex)) {
+				values[numValues++] = instance.value(attributeIndex);
+			}
+		}
+
+		return findCutPoints(values, numValues, maxBins);
+	}
+
+
+	/**
+	 * Find the cut points of the given values of a numeric attribute, 
+	 * like findCutPoints of instances. The values are sorted in place.
+	 * @param values - values that are not missing
+	 * @param numValues - the number of values, from the start of the array
+	 * @param maxBins
+	 * @return the increasing cut points
+	 */
+	static double[] findCutPoints(double[] values, int numValues, int maxBins) {
+		Arrays.sort(values, 0, numValues);
+
+		double[] cutPoints = new double[Math.max(0, maxBins - 1)];
+		int numCutPoints = 0;
+
+		// Cut at the quantiles. A quantile that falls inside a run of equal
+		// values is moved to the end of the run.
+		for (int bin = 1; bin < maxBins; bin++) {
+			int position = Math.max(1, (int) ((long) bin * numValues / maxBins));
+
+			while (position < numValues && values[position - 1] == values[position]) {
+				position++;
+			}
+
+			if (position >= numValues) {
+				break;
+			}
+
+			double cutPoint = values[position - 1] + (values[position] - values[position - 1]) / 2;
+
+			if (numCutPoints == 0 || cutPoint > cutPoints[numCutPoints - 1]) {
+				cutPoints[numCutPoints++] = cutPoint;
+			}
+		}
+
+		return Arrays.copyOf(cutPoints, numCutPoints);
+	}
+
+
+	/**
+	 * Encode the value of an attribute of an instance, as it is kept in 
+	 * the columns.
+	 * @param instance
+	 * @param attributeIndex - not the class attribute
+	 * @return the value index of the value
+	 */
+	short valueIndex(Instance instance, int attributeIndex) {
+		if (instance.isMissing(attributeIndex)) {
+			return (short) (this.numValues[attributeIndex] - 1);
+		} else if (this.cutPoints[attributeIndex] != null) {
+			return (short) bin(this.cutPoints[attributeIndex], instance.value(attributeIndex));
+		}
+
+		return (short) instance.value(attributeIndex);
+	}
+
+
+	/**
+	 * Find the bin of a numeric value, which is the number of cut points
+	 * below the value.
+	 * @param cutPoints
+	 * @param value - not missing
+	 * @return the bin of the value
+	 */
+	static int bin(double[] cutPoints, double value) {
+		int low = 0;
+		int high = cutPoints.length;
+
+		// Find the first cut point that is not below the value.
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (cutPoints[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+
+	/**
+	 * Return the attribute value of the given value index, as it is kept
+	 * in weka instances (missing values are NaN).
+	 * @param attributeIndex
+	 * @param valueIndex
+	 * @return attribute value
+	 */
+	double attributeValue(int attributeIndex, int valueIndex) {
+
+		return valueIndex == this.numValues[attributeIndex] - 1 ? Double.NaN : valueIndex;
+	}
+
+
+	/**
+	 * Partition the slice [from, to) of the row index array in place,
+	 * such that the rows are grouped by their value of the given attribute,
+	 * in the order of the value indexes.
+	 * @param attributeIndex
+	 * @param from
+	 * @param to
+	 * @param valueCounts - the number of rows of every value index in the slice
+	 * @return the start of every value index group, followed by 'to'
+	 */
+	int[] partition(int attributeIndex, int from, int to, int[] valueCounts) {
+		short[] column = this.columns[attributeIndex];
+		int numValues = valueCounts.length;
+
+		// Find where the group of every value index starts and ends.
+		int[] groupStarts = new int[numValues + 1];
+		int[] nextPositions = new int[numValues];
+		groupStarts[0] = from;
+
+		for (int valueIndex = 0; valueIndex < numValues; valueIndex++) {
+			nextPositions[valueIndex] = groupStarts[valueIndex];
+			groupStarts[valueIndex + 1] = groupStarts[valueIndex] + valueCounts[valueIndex];
+		}
+
+		// Swap every row into its group, until all of the groups are full.
+		for (int valueIndex = 0; valueIndex < numValues; valueIndex++) {
+			int groupEnd = groupStarts[valueIndex + 1];
+
+			while (nextPositions[valueIndex] < groupEnd) {
+				int position = nextPositions[valueIndex];
+				int row = this.rows[position];
+				int rowValueIndex = column[row];
+
+				if (rowValueIndex != valueIndex) {
+					// Move the row to its own group, and take the row in
+					// its place instead.
+					int swapPosition = nextPositions[rowValueIndex]++;
+					this.rows[position] = this.rows[swapPosition];
+					this.rows[swapPosition] = row;
+				} else {
+					nextPositions[valueIndex]++;
+				}
+			}
+		}
+
+		return groupStarts;
+	}
+}
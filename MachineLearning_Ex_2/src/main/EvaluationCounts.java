@@ -0,0 +1,40 @@
+package main;
+
+
+/**
+ * Mutable evaluation counts of a chunk of instances. Every evaluation task 
+ * fills its own counts, which are merged when the tasks are joined, so the 
+ * tasks never share anything they write.
+ */
+final class EvaluationCounts {
+	final int[][] confusionMatrix;
+	final long[] depthCounts;
+	int numErrors;
+	int numInstances;
+	
+	
+	EvaluationCounts(int numClasses, int maxDepth) {
+		this.confusionMatrix = new int[numClasses][numClasses];
+		this.depthCounts = new long[maxDepth + 1];
+	}
+	
+	
+	/**
+	 * Add the counts of another chunk to these counts.
+	 * @param other
+	 */
+	void add(EvaluationCounts other) {
+		for (int i = 0; i < this.confusionMatrix.length; i++) {
+			for (int j = 0; j < this.confusionMatrix[i].length; j++) {
+				this.confusionMatrix[i][j] += other.confusionMatrix[i][j];
+			}
+		}
+		
+		for (int depth = 0; depth < this.depthCounts.length; depth++) {
+			this.depthCounts[depth] += other.depthCounts[depth];
+		}
+		
+		this.numErrors += other.numErrors;
+		this.numInstances += other.numInstances;
+	}
+}
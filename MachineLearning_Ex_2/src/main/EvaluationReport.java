@@ -0,0 +1,123 @@
+package main;
+
+
+/**
+ * Immutable result of evaluating a decision tree on an instances set:
+ * the classification errors, the confusion matrix, the heights (depths) 
+ * of the paths of the instances in the tree, and the evaluation throughput.
+ */
+public final class EvaluationReport {
+	private final int numInstances;
+	private final int numErrors;
+	private final int[][] confusionMatrix;  // [actual class][classified class]
+	private final long[] depthCounts;       // number of instances of every depth.
+	private final long elapsedNanos;
+	
+	
+	/**
+	 * Constructor that create a report from the merged evaluation counts.
+	 * @param counts
+	 * @param elapsedNanos - wall clock time of the evaluation
+	 */
+	EvaluationReport(EvaluationCounts counts, long elapsedNanos) {
+		this.numInstances = counts.numInstances;
+		this.numErrors = counts.numErrors;
+		this.confusionMatrix = counts.confusionMatrix;
+		this.depthCounts = counts.depthCounts;
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	
+	/* gets methods */
+	
+	public int getNumInstances() {
+		return this.numInstances;
+	}
+	
+	public int getNumErrors() {
+		return this.numErrors;
+	}
+	
+	/**
+	 * @return the number of classification mistakes divided by the 
+	 * number of instances.
+	 */
+	public double getErrorRate() {
+		return (double) this.numErrors / this.numInstances;
+	}
+	
+	/**
+	 * @return copy of the confusion matrix, indexed by 
+	 * [actual class][classified class]. Instances with a missing class 
+	 * value are counted as errors, but are not in the matrix.
+	 */
+	public int[][] getConfusionMatrix() {
+		int[][] confusionMatrix = new int[this.confusionMatrix.length][];
+		
+		for (int i = 0; i < confusionMatrix.length; i++) {
+			confusionMatrix[i] = this.confusionMatrix[i].clone();
+		}
+		
+		return confusionMatrix;
+	}
+	
+	public int getMaxDepth() {
+		for (int depth = this.depthCounts.length - 1; depth > 0; depth--) {
+			if (this.depthCounts[depth] != 0) {
+				return depth;
+			}
+		}
+		
+		return 0;
+	}
+	
+	public long getTotalDepth() {
+		long totalDepth = 0;
+		
+		for (int depth = 0; depth < this.depthCounts.length; depth++) {
+			totalDepth += depth * this.depthCounts[depth];
+		}
+		
+		return totalDepth;
+	}
+	
+	public double getMeanDepth() {
+		return (double) this.getTotalDepth() / this.numInstances;
+	}
+	
+	/**
+	 * Return the depth percentile, by the nearest rank method.
+	 * @param percentile - between 0 and 100
+	 * @return the smallest depth that at least the given percent of 
+	 * the instances do not exceed.
+	 */
+	public int getDepthPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+		}
+		
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.numInstances));
+		long count = 0;
+		
+		for (int depth = 0; depth < this.depthCounts.length; depth++) {
+			count += this.depthCounts[depth];
+			
+			if (count >= rank) {
+				return depth;
+			}
+		}
+		
+		return this.getMaxDepth();
+	}
+	
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+	
+	/**
+	 * @return number of evaluated instances per second.
+	 */
+	public double getThroughput() {
+		return this.numInstances / (this.elapsedNanos / 1e9);
+	}
+}
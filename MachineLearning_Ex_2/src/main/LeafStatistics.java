@@ -0,0 +1,70 @@
+package main;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+
+/**
+ * Running statistics of a leaf, for incremental training.
+ * Every instance that reaches the leaf is counted for its class value, and
+ * for every attribute value against its class value, such that the gain of
+ * splitting the leaf by any attribute can be calculated without keeping
+ * the instances. Like in the encoded dataset, the last value index of
+ * every attribute stands for a missing value. Numeric attributes are not
+ * counted, so leaves are only split incrementally by nominal attributes.
+ */
+final class LeafStatistics {
+	final int[] classCounts;            // class value counts, including the counts the leaf started with.
+	final int[] seenClassCounts;        // class value counts of the instances the leaf has seen.
+	final int[][][] contingencyTables;  // [attributeIndex][valueIndex][classIndex], null for the class and numeric attributes.
+	int numSeen;                        // number of instances the leaf has seen.
+	int numSeenAtLastCheck;             // numSeen when a split was last checked for.
+
+
+	/**
+	 * Constructor of empty statistics.
+	 * @param header - structure of the dataset, with a class index
+	 * @param initialClassCounts - class value counts that the leaf starts with,
+	 * for example from the split that created it. May be null.
+	 */
+	LeafStatistics(Instances header, int[] initialClassCounts) {
+		int numAttributes = header.numAttributes();
+
+		this.classCounts = initialClassCounts != null ?
+				initialClassCounts.clone() : new int[header.numClasses()];
+		this.seenClassCounts = new int[header.numClasses()];
+		this.contingencyTables = new int[numAttributes][][];
+
+		for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+			if (attributeIndex != header.classIndex() && header.attribute(attributeIndex).isNominal()) {
+				// Keep one more value index for the missing values.
+				this.contingencyTables[attributeIndex] =
+						new int[header.attribute(attributeIndex).numValues() + 1][header.numClasses()];
+			}
+		}
+	}
+
+
+	/**
+	 * Count an instance with a class value.
+	 * @param instance
+	 */
+	void add(Instance instance) {
+		int classIndex = (int) instance.classValue();
+
+		this.classCounts[classIndex]++;
+		this.seenClassCounts[classIndex]++;
+		this.numSeen++;
+
+		for (int attributeIndex = 0; attributeIndex < this.contingencyTables.length; attributeIndex++) {
+			int[][] contingencyTable = this.contingencyTables[attributeIndex];
+
+			if (contingencyTable != null) {
+				int valueIndex = instance.isMissing(attributeIndex) ?
+						contingencyTable.length - 1 : (int) instance.value(attributeIndex);
+
+				contingencyTable[valueIndex][classIndex]++;
+			}
+		}
+	}
+}
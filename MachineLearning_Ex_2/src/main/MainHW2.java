@@ -1,7 +1,7 @@
 package main;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 
@@ -31,30 +31,36 @@ public class MainHW2 {
 			};
 
 
-	public static BufferedReader readDataFile(String filename) {
-		BufferedReader inputReader = null;
-
-		try {
-			inputReader = new BufferedReader(new FileReader(filename));
-		} catch (FileNotFoundException ex) {
-			System.err.println("File not found: " + filename);
+	/**
+	 * Sets the class index as the last attribute.
+	 * @param fileName
+	 * @return Instances data
+	 * @throws IOException
+	 */
+	public static Instances loadData(String fileName) throws IOException{
+		try (BufferedReader datafile = new BufferedReader(new FileReader(fileName))) {
+			Instances data = new Instances(datafile);
+			data.setClassIndex(data.numAttributes() - 1);
+			return data;
 		}
-
-		return inputReader;
 	}
 	
+	
 	/**
+	 * Load the encoded form of a data file through a dataset cache (see 
+	 * DatasetCache), which parses the ARFF text only by the first load, or 
+	 * after the file changed, and creates no Instance per row. The trees 
+	 * are trained and evaluated on it by buildClassifier(EncodedDataset) 
+	 * and evaluate(EncodedDataset).
 	 * Sets the class index as the last attribute.
 	 * @param fileName
-	 * @return Instances data
+	 * @param cacheDirectory - the directory of the cache files
+	 * @return encoded data
 	 * @throws IOException
 	 */
-	public static Instances loadData(String fileName) throws IOException{
-		BufferedReader datafile = readDataFile(fileName);
-
-		Instances data = new Instances(datafile);
-		data.setClassIndex(data.numAttributes() - 1);
-		return data;
+	static EncodedDataset loadEncodedData(String fileName, File cacheDirectory) throws IOException {
+		
+		return new DatasetCache(cacheDirectory).load(fileName);
 	}
 	
 	
@@ -111,6 +117,9 @@ public class MainHW2 {
 		
 		// (2.a)
 		// Construct a tree and prune it according to the current cutoff value.
+		// The unpruned tree of the best impurity measure was already built in 
+		// part 1, so every pruned tree is derived from it without rebuilding.
+		DecisionTree unprunedDT = bestImpurity.equals(eImpurityMode.Entropy) ? entropyDT : giniDT;
 		double bestValidationErrorAtPValue = Double.MAX_VALUE;
 		int bestPValueIndex = -1;
 		   
@@ -119,9 +128,7 @@ public class MainHW2 {
 			double p_value = P_VALUES[i];
 			System.out.println("Decision Tree with p_value of: " + p_value);
 			
-			DecisionTree dt = new DecisionTree(bestImpurity, ePruningMode.Chi, TABLE_OF_CHISQUARED_PROBABILITIES, i);
-			
-			dt.buildClassifier(trainingCancer);
+			DecisionTree dt = unprunedDT.prunedView(TABLE_OF_CHISQUARED_PROBABILITIES, i);
 			
 			
 			// (2.b)
@@ -135,13 +142,11 @@ public class MainHW2 {
 			// p- values cutoffs: {1 (no pruning), 0.75, 0.5, 0.25, 0.05, 0.005}.
 			
 			
-			// Set the 'm_CountHeighs' field to be 0.
-			dt.setTotalHeights(0);
-			dt.setCountHeight(0);
+			EvaluationReport validationReport = dt.evaluate(validationCancer);
 			
-			double validatinError = dt.calcAvgError(validationCancer); // Calculate validation error.
-			int validationMaxHeight = dt.getCountHeight();
-			double validationAverageHeight = (double) dt.getTotalHeighs() / validationCancer.numInstances() ;
+			double validatinError = validationReport.getErrorRate(); // Calculate validation error.
+			int validationMaxHeight = validationReport.getMaxDepth();
+			double validationAverageHeight = validationReport.getMeanDepth();
 		
 			System.out.println("Max height on validation data: " + validationMaxHeight);
 			
@@ -170,14 +175,9 @@ public class MainHW2 {
 		// Calculate the test error for the tree corresponding to this configuration.
 		System.out.println("Best validation error at p_value = " + bestValidationErrorAtPValue);  
 		
-		// Set the p - value of the decision tree to be the best one 
-		// that we found above.
-		DecisionTree bestDT = new DecisionTree(bestImpurity, ePruningMode.Chi, TABLE_OF_CHISQUARED_PROBABILITIES, bestPValueIndex);
-		
-		// build decision tree according to the the best p - value that we 
-		// found above, then calc average error of testing data.
-		// NOTE: we set already set the pruning mode field to "chi mode".
-		bestDT.buildClassifier(trainingCancer);
+		// Derive the decision tree of the best p - value that we found 
+		// above, then calc average error of testing data.
+		DecisionTree bestDT = unprunedDT.prunedView(TABLE_OF_CHISQUARED_PROBABILITIES, bestPValueIndex);
 		
 		
 		double testError = bestDT.calcAvgError(testingCancer);
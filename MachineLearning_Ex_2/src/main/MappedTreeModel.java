@@ -0,0 +1,216 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import weka.core.Instance;
+
+
+/**
+ * A trained decision tree that was saved in the binary model format, and 
+ * is classified straight from the memory mapped model file. No node 
+ * objects are created when the model is loaded, thus a large model loads 
+ * in the time of mapping its file, and lives outside of the heap.
+ *
+ * The model file layout (big endian) is the compiled form of the tree:
+ * magic, version, number of nodes, max depth, branch table length, then a 
+ * record of every node in breadth first order - attribute index, return 
+ * value, depth, branch offset, branch width and threshold - and then the 
+ * branch table.
+ */
+public final class MappedTreeModel implements TreePredictor {
+	private static final int MAGIC = 0x44544d31;    // "DTM1"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 20;
+	private static final int NODE_SIZE = 32;
+	
+	// Offsets of the node record fields.
+	private static final int ATTRIBUTE_INDEX = 0;
+	private static final int RETURN_VALUE = 4;
+	private static final int DEPTH = 12;
+	private static final int BRANCH_OFFSET = 16;
+	private static final int BRANCH_WIDTH = 20;
+	private static final int THRESHOLD = 24;
+	
+	private final ByteBuffer buffer;
+	private final int numNodes;
+	private final int maxDepth;
+	private final int branchTableStart;
+	
+	
+	/**
+	 * Constructor that wraps a model buffer, after its header was checked.
+	 * @param buffer
+	 */
+	private MappedTreeModel(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.numNodes = buffer.getInt(8);
+		this.maxDepth = buffer.getInt(12);
+		this.branchTableStart = HEADER_SIZE + this.numNodes * NODE_SIZE;
+	}
+	
+	
+	/**
+	 * Load a model file by memory mapping it.
+	 * @param fileName
+	 * @return the mapped model
+	 * @throws IOException if the file is not a model file of this version
+	 */
+	public static MappedTreeModel load(String fileName) throws IOException {
+		ByteBuffer buffer;
+		
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+				FileChannel channel = file.getChannel()) {
+			// The mapping stays valid after the channel is closed.
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a decision tree model file: " + fileName);
+		}
+		
+		int version = buffer.getInt(4);
+		
+		if (version != VERSION) {
+			throw new IOException("Unsupported model file version " + version + ": " + fileName);
+		}
+		
+		int numNodes = buffer.getInt(8);
+		int branchTableLength = buffer.getInt(16);
+		
+		if (buffer.capacity() != HEADER_SIZE + (long) numNodes * NODE_SIZE + 4L * branchTableLength) {
+			throw new IOException("Truncated model file: " + fileName);
+		}
+		
+		return new MappedTreeModel(buffer);
+	}
+	
+	
+	/**
+	 * Write the compiled form of a tree into a model file. The file is 
+	 * written aside and then moved in place, so a reader never sees half of it.
+	 * @param compiledTree
+	 * @param file
+	 * @throws IOException
+	 */
+	static void write(CompiledTree compiledTree, File file) throws IOException {
+		int numNodes = compiledTree.attributeIndexes.length;
+		File tempFile = new File(file.getPath() + ".tmp");
+		
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(numNodes);
+			output.writeInt(compiledTree.maxDepth);
+			output.writeInt(compiledTree.branchTable.length);
+			
+			for (int node = 0; node < numNodes; node++) {
+				output.writeInt(compiledTree.attributeIndexes[node]);
+				output.writeDouble(compiledTree.returnValues[node]);
+				output.writeInt(compiledTree.depths[node]);
+				output.writeInt(compiledTree.branchOffsets[node]);
+				output.writeInt(compiledTree.branchWidths[node]);
+				output.writeDouble(compiledTree.thresholds[node]);
+			}
+			
+			for (int i = 0; i < compiledTree.branchTable.length; i++) {
+				output.writeInt(compiledTree.branchTable[i]);
+			}
+		}
+		
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	
+	/* gets methods */
+	
+	public int getNumNodes() {
+		return this.numNodes;
+	}
+	
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+	
+	
+	@Override
+	public double classifyInstance(Instance instance) {
+		
+		return this.buffer.getDouble(this.nodeStart(this.findNode(instance)) + RETURN_VALUE);
+	}
+	
+	
+	@Override
+	public Prediction predict(Instance instance) {
+		int nodeStart = this.nodeStart(this.findNode(instance));
+		
+		return new Prediction(this.buffer.getDouble(nodeStart + RETURN_VALUE), 
+				this.buffer.getInt(nodeStart + DEPTH));
+	}
+	
+	
+	/**
+	 * Find the node that classifies the instance, the same way as the 
+	 * compiled tree does, with absolute reads of the mapped buffer only.
+	 * @param instance
+	 * @return index of the classifying node
+	 */
+	private int findNode(Instance instance) {
+		ByteBuffer buffer = this.buffer;
+		int node = 0;
+		int nodeStart = HEADER_SIZE;
+		int attributeIndex = buffer.getInt(nodeStart + ATTRIBUTE_INDEX);
+		
+		while (attributeIndex >= 0) {
+			double value = instance.value(attributeIndex);
+			int width = buffer.getInt(nodeStart + BRANCH_WIDTH);
+			int valueIndex;
+			
+			if (Double.isNaN(value)) {
+				valueIndex = width - 1;
+			} else {
+				double threshold = buffer.getDouble(nodeStart + THRESHOLD);
+				
+				// A numeric value goes below (0) or above (1) the threshold.
+				valueIndex = threshold == threshold ? (value <= threshold ? 0 : 1) : (int) value;
+				
+				if (valueIndex >= width - 1) {
+					// A value that was never seen by this node.
+					break;
+				}
+			}
+			
+			int childNode = buffer.getInt(this.branchTableStart 
+					+ 4 * (buffer.getInt(nodeStart + BRANCH_OFFSET) + valueIndex));
+			
+			if (childNode < 0) {
+				break;
+			}
+			
+			node = childNode;
+			nodeStart = this.nodeStart(node);
+			attributeIndex = buffer.getInt(nodeStart + ATTRIBUTE_INDEX);
+		}
+		
+		return node;
+	}
+	
+	
+	/**
+	 * @param node
+	 * @return the position of the node record in the buffer
+	 */
+	private int nodeStart(int node) {
+		
+		return HEADER_SIZE + node * NODE_SIZE;
+	}
+}
@@ -0,0 +1,23 @@
+package main;
+
+import java.util.List;
+
+
+/**
+ * Node of a decision tree. An inner node has a child for every branch
+ * (attribute value) of its split, and a leaf has no children.
+ */
+class Node {
+	Node[] children;     
+	Node parent;         
+	int attributeIndex; 
+	double returnValue;
+	double branch; 
+	double threshold = Double.NaN;    // split value of a numeric attribute, NaN for nominal splits.
+	List<Double> attributeValuesBranches; 
+	double chiSquare;     // chi square statistic of the split, if the node was split.
+	int degOfFreedom;     // degree of freedom of the split, if the node was split.
+	int[] classCounts;            // class value counts of the training instances of the node.
+	LeafStatistics statistics;    // running counts of a leaf, in incremental training.
+
+}
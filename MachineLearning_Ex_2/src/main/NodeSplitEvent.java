@@ -0,0 +1,61 @@
+package main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Flight recorder event of a split decision of a tree node. There is one 
+ * event per impure node, so it is disabled by default, and is meant to be 
+ * enabled in a recording settings file when a build is investigated.
+ */
+@Name("main.NodeSplit")
+@Label("Decision Tree Node Split")
+@Category("Decision Tree")
+@Description("Split decision of a decision tree node")
+@Enabled(false)
+final class NodeSplitEvent extends Event {
+	@Label("Rows")
+	int numRows;
+	
+	@Label("Attribute Index")
+	int attributeIndex;
+	
+	@Label("Gain")
+	double gain;
+	
+	@Label("Chi Square")
+	double chiSquare;
+	
+	@Label("Degrees Of Freedom")
+	int degOfFreedom;
+	
+	@Label("Accepted")
+	boolean accepted;
+	
+	
+	/**
+	 * Tell whether the events are recorded, so that no event is created 
+	 * per split decision when they are not. The event type is registered 
+	 * by the first call, on the first split decision, and not when the 
+	 * tree classes are loaded.
+	 * @return true if the event is enabled in a running recording
+	 */
+	static boolean isRecorded() {
+		
+		return TypeHolder.TYPE.isEnabled();
+	}
+	
+	
+	/**
+	 * Holds the event type, which is looked up when the holder is loaded.
+	 */
+	private static final class TypeHolder {
+		static final EventType TYPE = EventType.getEventType(NodeSplitEvent.class);
+	}
+}
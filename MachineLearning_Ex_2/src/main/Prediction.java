@@ -0,0 +1,35 @@
+package main;
+
+
+/**
+ * The result of classifying a single instance by a decision tree: 
+ * the classified class, and the depth of the node that classified it 
+ * (the number of edges from the root).
+ * Instances of this class are immutable.
+ */
+public final class Prediction {
+	private final double classValue;
+	private final int depth;
+	
+	
+	/**
+	 * Constructor that create a prediction.
+	 * @param classValue
+	 * @param depth
+	 */
+	public Prediction(double classValue, int depth) {
+		this.classValue = classValue;
+		this.depth = depth;
+	}
+	
+	
+	/* gets methods */
+	
+	public double getClassValue() {
+		return this.classValue;
+	}
+	
+	public int getDepth() {
+		return this.depth;
+	}
+}
@@ -0,0 +1,232 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+
+/**
+ * Temporary file of encoded training rows, for out-of-core training.
+ * Every row is a record of one value index per attribute (the class value
+ * index in the place of the class attribute), as big endian shorts, so
+ * the rows of a tree node are read and written in large sequential
+ * blocks. A file is written once, then read by any number of passes, and
+ * deleted once its node is split or loaded into memory.
+ */
+final class SpillFile {
+	static final int READ_BUFFER_SIZE = 1 << 20;
+	static final int WRITE_BUFFER_SIZE = 1 << 16;
+	
+	private final File file;
+	private final int numColumns;
+	private final byte[] record;
+	private DataOutputStream output;
+	private DataInputStream input;
+	private int numRows;
+	
+	
+	/**
+	 * Constructor that creates an empty spill file, open for writing.
+	 * @param directory - the directory of the file, null for the default
+	 * temporary directory
+	 * @param numColumns - the number of attributes of a row
+	 * @throws IOException
+	 */
+	SpillFile(File directory, int numColumns) throws IOException {
+		this.file = File.createTempFile("tree", ".spill", directory);
+		this.numColumns = numColumns;
+		this.record = new byte[2 * numColumns];
+		this.output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(this.file), WRITE_BUFFER_SIZE));
+	}
+	
+	
+	/**
+	 * Encode the training instances of an ARFF file into a spill file,
+	 * reading the file incrementally. Instances with a missing class value
+	 * are left out, like in the in-memory encoding.
+	 * @param arffFile
+	 * @param structure - encoded dataset (without rows) that gives the
+	 * class index and the cut points of the numeric attributes
+	 * @param directory - the directory of the spill file, or null
+	 * @return the spill file of the rows, closed for writing
+	 * @throws IOException
+	 */
+	static SpillFile encode(File arffFile, EncodedDataset structure, File directory) throws IOException {
+		ArffLoader loader = new ArffLoader();
+		loader.setFile(arffFile);
+		
+		Instances header = loader.getStructure();
+		header.setClassIndex(structure.classIndex);
+		
+		int numAttributes = header.numAttributes();
+		short[] row = new short[numAttributes];
+		SpillFile spillFile = new SpillFile(directory, numAttributes);
+		Instance instance;
+		
+		try {
+			while ((instance = loader.getNextInstance(header)) != null) {
+				if (instance.classIsMissing()) {
+					continue;
+				}
+				
+				for (int attributeIndex = 0; attributeIndex < numAttributes; attributeIndex++) {
+					row[attributeIndex] = attributeIndex == structure.classIndex ?
+							(short) instance.classValue() : structure.valueIndex(instance, attributeIndex);
+				}
+				
+				spillFile.write(row);
+			}
+			
+			spillFile.closeWriting();
+		} catch (IOException e) {
+			spillFile.delete();
+			throw e;
+		}
+		
+		return spillFile;
+	}
+	
+	
+	/**
+	 * @return the number of rows that were written
+	 */
+	int getNumRows() {
+		return this.numRows;
+	}
+	
+	
+	/**
+	 * Append a row to the file.
+	 * @param row - value index of every attribute
+	 * @throws IOException
+	 */
+	void write(short[] row) throws IOException {
+		for (int column = 0; column < this.numColumns; column++) {
+			this.record[2 * column] = (byte) (row[column] >>> 8);
+			this.record[2 * column + 1] = (byte) row[column];
+		}
+		
+		this.output.write(this.record);
+		this.numRows++;
+	}
+	
+	
+	/**
+	 * Flush the written rows, and close the file for writing.
+	 * @throws IOException
+	 */
+	void closeWriting() throws IOException {
+		if (this.output != null) {
+			this.output.close();
+			this.output = null;
+		}
+	}
+	
+	
+	/**
+	 * Start a pass over the rows of the file, from its first row.
+	 * @throws IOException
+	 */
+	void openReading() throws IOException {
+		this.closeReading();
+		this.input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(this.file), READ_BUFFER_SIZE));
+	}
+	
+	
+	/**
+	 * Read the next row of the current pass.
+	 * @param row - receives the value index of every attribute
+	 * @return false if the pass is over
+	 * @throws IOException
+	 */
+	boolean read(short[] row) throws IOException {
+		try {
+			this.input.readFully(this.record);
+		} catch (EOFException e) {
+			return false;
+		}
+		
+		for (int column = 0; column < this.numColumns; column++) {
+			row[column] = (short) ((this.record[2 * column] << 8) | (this.record[2 * column + 1] & 0xff));
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * End the current pass.
+	 * @throws IOException
+	 */
+	void closeReading() throws IOException {
+		if (this.input != null) {
+			this.input.close();
+			this.input = null;
+		}
+	}
+	
+	
+	/**
+	 * Read all of the rows of the file into memory, as columns.
+	 * @param structure - encoded dataset (without rows) that gives the
+	 * header and the cut points of the rows
+	 * @return the encoded dataset of the rows
+	 * @throws IOException
+	 */
+	EncodedDataset load(EncodedDataset structure) throws IOException {
+		short[][] columns = new short[this.numColumns][];
+		short[] classColumn = new short[this.numRows];
+		short[] row = new short[this.numColumns];
+		
+		for (int attributeIndex = 0; attributeIndex < this.numColumns; attributeIndex++) {
+			if (attributeIndex != structure.classIndex) {
+				columns[attributeIndex] = new short[this.numRows];
+			}
+		}
+		
+		this.openReading();
+		
+		try {
+			for (int position = 0; position < this.numRows && this.read(row); position++) {
+				classColumn[position] = row[structure.classIndex];
+				
+				for (int attributeIndex = 0; attributeIndex < this.numColumns; attributeIndex++) {
+					if (columns[attributeIndex] != null) {
+						columns[attributeIndex][position] = row[attributeIndex];
+					}
+				}
+			}
+		} finally {
+			this.closeReading();
+		}
+		
+		return new EncodedDataset(structure.header, structure.cutPoints, columns, classColumn);
+	}
+	
+	
+	/**
+	 * Close the file and delete it. Deleting a file again does nothing.
+	 */
+	void delete() {
+		try {
+			this.closeWriting();
+			this.closeReading();
+		} catch (IOException e) {
+			// The file is deleted anyway.
+		}
+		
+		this.file.delete();
+	}
+}
@@ -0,0 +1,54 @@
+package main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+/**
+ * Flight recorder event of a decision tree build, with the counters of 
+ * the build. It is enabled by default, and it is committed once per build.
+ */
+@Name("main.TreeBuild")
+@Label("Decision Tree Build")
+@Category("Decision Tree")
+@Description("Build of a decision tree, with the counters of the build")
+final class TreeBuildEvent extends Event {
+	@Label("Build Mode")
+	String buildMode;
+	
+	@Label("Split Engine")
+	String splitEngine;
+	
+	@Label("Rows")
+	int numRows;
+	
+	@Label("Attributes")
+	int numAttributes;
+	
+	@Label("Nodes")
+	long numNodes;
+	
+	@Label("Split Candidates")
+	long splitCandidates;
+	
+	@Label("Rows Scanned")
+	long rowsScanned;
+	
+	@Label("Chi Pruned Nodes")
+	long numChiPruned;
+	
+	@Label("Scoring Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long scoringTime;
+	
+	@Label("Partition Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long partitionTime;
+	
+	@Label("Peak Frontier Size")
+	int peakFrontierSize;
+}
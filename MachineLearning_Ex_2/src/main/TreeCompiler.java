@@ -0,0 +1,301 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import weka.core.Instance;
+
+
+/**
+ * Compiles a trained decision tree into a generated class, in which the 
+ * tree is written as nested switches over the nominal attribute values, 
+ * and as comparisons with the thresholds of the numeric attributes. 
+ * The JIT compiles such a class into straight line code, without the 
+ * array lookups of the compiled tree. The class is compiled in memory by 
+ * the system java compiler, and is loaded by its own class loader, so it 
+ * is unloaded together with the returned predictor.
+ * Large subtrees are generated as methods of their own, to keep every 
+ * method under the size that the JIT inlines and compiles well.
+ * If there is no system java compiler (the program runs on a JRE), or 
+ * the tree is too large, the tree is interpreted instead.
+ * The generated code pays off when the paths of the instances are 
+ * predictable, such that the CPU predicts the switches, as in shallow 
+ * trees over skewed attribute values. GeneratedTreeBenchmark measured a 
+ * chi pruned tree whose attributes take their first value 95% of the 
+ * time at 63M to 72M instances per second, against 32M to 40M for the 
+ * compiled tree. At 80% the two are about even. On uniformly random 
+ * instances every switch is mispredicted, and the compiled tree (which 
+ * only follows array indexes) is faster, 36M against 22M. Compiling 
+ * takes about a second, so it is meant for models that classify many 
+ * instances. Hidden classes would need Java 15, while the build targets 
+ * Java 11, so the class is compiled by javax.tools.
+ */
+public final class TreeCompiler {
+	private static final String PACKAGE_NAME = "main.generated";
+	private static final int MAX_NODES = 10000;           // larger trees are interpreted.
+	private static final int MAX_NODES_PER_METHOD = 32;
+	private static final AtomicInteger nextClassNumber = new AtomicInteger();
+	
+	private TreeCompiler() {
+	}
+	
+	
+	/**
+	 * Compile the given tree into a predictor. The predictor is a snapshot: 
+	 * it does not change if the tree is built or updated again.
+	 * @param decisionTree - a trained decision tree
+	 * @return the generated predictor, or an interpreting predictor if the 
+	 * tree could not be compiled.
+	 */
+	public static TreePredictor compile(DecisionTree decisionTree) {
+		CompiledTree compiledTree = decisionTree.getCompiledTree();
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		
+		if (compiler == null || compiledTree.attributeIndexes.length > MAX_NODES) {
+			return compiledTree;
+		}
+		
+		String className = "GeneratedTree" + nextClassNumber.incrementAndGet();
+		String source = generateSource(compiledTree, className);
+		
+		try {
+			Class<?> generatedClass = compileClass(compiler, PACKAGE_NAME + "." + className, source);
+			
+			return (TreePredictor) generatedClass.getConstructor(double[].class, int[].class)
+					.newInstance(compiledTree.returnValues.clone(), compiledTree.depths);
+		} catch (Exception e) {
+			// The interpreted tree classifies the same.
+			return compiledTree;
+		}
+	}
+	
+	
+	/**
+	 * Generate the source of a predictor class for the tree. Every generated 
+	 * method finds the node that classifies the instance in one subtree, 
+	 * and the node is then looked up in the return value and depth arrays.
+	 * @param compiledTree
+	 * @param className
+	 * @return java source code
+	 */
+	static String generateSource(CompiledTree compiledTree, String className) {
+		StringBuilder code = new StringBuilder();
+		
+		code.append("package ").append(PACKAGE_NAME).append(";\n\n");
+		code.append("import weka.core.Instance;\n\n");
+		code.append("public final class ").append(className).append(" implements main.TreePredictor {\n");
+		code.append("\tprivate final double[] returnValues;\n");
+		code.append("\tprivate final int[] depths;\n\n");
+		code.append("\tpublic ").append(className).append("(double[] returnValues, int[] depths) {\n");
+		code.append("\t\tthis.returnValues = returnValues;\n");
+		code.append("\t\tthis.depths = depths;\n");
+		code.append("\t}\n\n");
+		code.append("\tpublic double classifyInstance(Instance instance) {\n");
+		code.append("\t\treturn this.returnValues[node0(instance)];\n");
+		code.append("\t}\n\n");
+		code.append("\tpublic main.Prediction predict(Instance instance) {\n");
+		code.append("\t\tint node = node0(instance);\n");
+		code.append("\t\treturn new main.Prediction(this.returnValues[node], this.depths[node]);\n");
+		code.append("\t}\n");
+		
+		// Generate a method for the root, and for every subtree that did 
+		// not fit in the method of its parent.
+		Deque<Integer> methodRoots = new ArrayDeque<Integer>();
+		methodRoots.add(0);
+		
+		while (!methodRoots.isEmpty()) {
+			int methodRoot = methodRoots.poll();
+			int[] numInlinedNodes = new int[1];
+			
+			code.append("\n\tprivate static int node").append(methodRoot).append("(Instance instance) {\n");
+			writeNode(code, compiledTree, methodRoot, "\t\t", numInlinedNodes, methodRoots);
+			code.append("\t}\n");
+		}
+		
+		code.append("}\n");
+		
+		return code.toString();
+	}
+	
+	
+	/**
+	 * Write the statements that return the node that classifies the 
+	 * instance in the subtree of the given node.
+	 * @param code
+	 * @param compiledTree
+	 * @param node
+	 * @param indent
+	 * @param numInlinedNodes - number of nodes written in the current method
+	 * @param methodRoots - receives the subtrees that need a method of their own
+	 */
+	private static void writeNode(StringBuilder code, CompiledTree compiledTree, int node, String indent, 
+			int[] numInlinedNodes, Deque<Integer> methodRoots) {
+		int attributeIndex = compiledTree.attributeIndexes[node];
+		
+		if (attributeIndex < 0) {
+			code.append(indent).append("return ").append(node).append(";\n");
+			return;
+		}
+		
+		if (numInlinedNodes[0]++ >= MAX_NODES_PER_METHOD) {
+			// Continue in a method of its own.
+			methodRoots.add(node);
+			code.append(indent).append("return node").append(node).append("(instance);\n");
+			return;
+		}
+		
+		// Every nesting level has its own variable, since java does not 
+		// allow shadowing.
+		String value = "value" + compiledTree.depths[node];
+		int offset = compiledTree.branchOffsets[node];
+		int width = compiledTree.branchWidths[node];
+		int missingChild = compiledTree.branchTable[offset + width - 1];
+		
+		code.append(indent).append("double ").append(value)
+				.append(" = instance.value(").append(attributeIndex).append(");\n");
+		
+		// A missing value (NaN) is the only value that differs from itself.
+		code.append(indent).append("if (").append(value).append(" != ").append(value).append(") {\n");
+		
+		if (missingChild >= 0) {
+			writeNode(code, compiledTree, missingChild, indent + "\t", numInlinedNodes, methodRoots);
+		} else {
+			code.append(indent).append("\treturn ").append(node).append(";\n");
+		}
+		
+		code.append(indent).append("}\n");
+		
+		double threshold = compiledTree.thresholds[node];
+		
+		if (threshold == threshold) {
+			// A numeric value goes below (0) or above (1) the threshold.
+			code.append(indent).append("switch (").append(value).append(" <= ")
+					.append(Double.toString(threshold)).append(" ? 0 : 1) {\n");
+		} else {
+			code.append(indent).append("switch ((int) ").append(value).append(") {\n");
+		}
+		
+		for (int valueIndex = 0; valueIndex < width - 1; valueIndex++) {
+			int childNode = compiledTree.branchTable[offset + valueIndex];
+			
+			if (childNode >= 0) {
+				code.append(indent).append("case ").append(valueIndex).append(": {\n");
+				writeNode(code, compiledTree, childNode, indent + "\t", numInlinedNodes, methodRoots);
+				code.append(indent).append("}\n");
+			}
+		}
+		
+		code.append(indent).append("}\n");
+		
+		// A value that has no branch is classified by this node.
+		code.append(indent).append("return ").append(node).append(";\n");
+	}
+	
+	
+	/**
+	 * Compile a generated source in memory, and load its class.
+	 * @param compiler
+	 * @param className - fully qualified class name
+	 * @param source
+	 * @return the loaded class
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private static Class<?> compileClass(JavaCompiler compiler, String className, String source) 
+			throws IOException, ClassNotFoundException {
+		final Map<String, ByteArrayOutputStream> classBytes = new HashMap<String, ByteArrayOutputStream>();
+		
+		JavaFileObject sourceFile = new SimpleJavaFileObject(
+				URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), 
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		
+		StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null);
+		
+		// Keep the class files in memory instead of writing them.
+		JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, final String outputClassName, 
+					JavaFileObject.Kind kind, FileObject sibling) {
+				return new SimpleJavaFileObject(
+						URI.create("bytes:///" + outputClassName.replace('.', '/') + kind.extension), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+						classBytes.put(outputClassName, bytes);
+						return bytes;
+					}
+				};
+			}
+		};
+		
+		// The generated class needs this package and weka, wherever they are 
+		// loaded from.
+		List<String> options = new ArrayList<String>(Arrays.asList("-g:none", "-nowarn", 
+				"-classpath", codeSource(TreePredictor.class) + File.pathSeparator + codeSource(Instance.class)));
+		
+		try {
+			boolean isCompiled = compiler.getTask(null, fileManager, null, options, null, 
+					Arrays.asList(sourceFile)).call();
+			
+			if (!isCompiled) {
+				throw new IOException("The generated tree class did not compile");
+			}
+		} finally {
+			fileManager.close();
+		}
+		
+		ClassLoader classLoader = new ClassLoader(TreePredictor.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				ByteArrayOutputStream bytes = classBytes.get(name);
+				
+				if (bytes == null) {
+					throw new ClassNotFoundException(name);
+				}
+				
+				return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+			}
+		};
+		
+		return classLoader.loadClass(className);
+	}
+	
+	
+	/**
+	 * @param loadedClass
+	 * @return the path of the directory or jar that the class was loaded from
+	 * @throws IOException
+	 */
+	private static String codeSource(Class<?> loadedClass) throws IOException {
+		try {
+			return new File(loadedClass.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+		} catch (Exception e) {
+			throw new IOException("Can't find the class path of " + loadedClass.getName(), e);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package main;
+
+import weka.core.Instance;
+
+
+/**
+ * Something that classifies instances by a trained decision tree, such as 
+ * the tree itself or a model that was saved from it. 
+ * Implementations are safe to call from many threads at once.
+ */
+public interface TreePredictor {
+	
+	/**
+	 * Return the classification of the instance.
+	 * @param instance
+	 * @return the classified class value
+	 */
+	double classifyInstance(Instance instance);
+	
+	/**
+	 * Return the classification of the instance, together with the height 
+	 * of its path in the tree.
+	 * @param instance
+	 * @return the classified class and the height of the instance.
+	 */
+	Prediction predict(Instance instance);
+}
@@ -0,0 +1,119 @@
+package main;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+
+
+/**
+ * Immutable result of cross validating one configuration of a decision
+ * tree: the error and the mean path depth of every fold, and their mean
+ * and variance over the folds.
+ */
+public final class TuningResult {
+	private final eImpurityMode impurityMode;
+	private final ePruningMode pruningMode;
+	private final double pValue;
+	private final double[] foldErrors;       // error rate of every fold.
+	private final double[] foldMeanDepths;   // mean path depth of every fold.
+	
+	
+	/**
+	 * Constructor that create a result from the measures of the folds.
+	 * @param impurityMode
+	 * @param pruningMode
+	 * @param pValue - 1 for no pruning
+	 * @param foldErrors
+	 * @param foldMeanDepths
+	 */
+	TuningResult(eImpurityMode impurityMode, ePruningMode pruningMode, double pValue,
+			double[] foldErrors, double[] foldMeanDepths) {
+		this.impurityMode = impurityMode;
+		this.pruningMode = pruningMode;
+		this.pValue = pValue;
+		this.foldErrors = foldErrors;
+		this.foldMeanDepths = foldMeanDepths;
+	}
+	
+	
+	/* gets methods */
+	
+	public eImpurityMode getImpurityMode() {
+		return this.impurityMode;
+	}
+	
+	public ePruningMode getPruningMode() {
+		return this.pruningMode;
+	}
+	
+	public double getPValue() {
+		return this.pValue;
+	}
+	
+	public int getNumFolds() {
+		return this.foldErrors.length;
+	}
+	
+	public double[] getFoldErrors() {
+		return this.foldErrors.clone();
+	}
+	
+	public double getMeanError() {
+		return mean(this.foldErrors);
+	}
+	
+	public double getErrorVariance() {
+		return variance(this.foldErrors);
+	}
+	
+	public double getMeanDepth() {
+		return mean(this.foldMeanDepths);
+	}
+	
+	public double getDepthVariance() {
+		return variance(this.foldMeanDepths);
+	}
+	
+	
+	@Override
+	public String toString() {
+		
+		return String.format("%s %s p=%s: error %.4f (variance %.6f), depth %.2f (variance %.4f)",
+				this.impurityMode, this.pruningMode, this.pValue, this.getMeanError(),
+				this.getErrorVariance(), this.getMeanDepth(), this.getDepthVariance());
+	}
+	
+	
+	/**
+	 * @param values
+	 * @return the mean of the values
+	 */
+	private static double mean(double[] values) {
+		double sum = 0;
+		
+		for (double value : values) {
+			sum += value;
+		}
+		
+		return sum / values.length;
+	}
+	
+	
+	/**
+	 * @param values
+	 * @return the sample variance of the values, 0 for a single value
+	 */
+	private static double variance(double[] values) {
+		if (values.length < 2) {
+			return 0;
+		}
+		
+		double mean = mean(values);
+		double sumOfSquares = 0;
+		
+		for (double value : values) {
+			sumOfSquares += (value - mean) * (value - mean);
+		}
+		
+		return sumOfSquares / (values.length - 1);
+	}
+}
@@ -0,0 +1,33 @@
+package main;
+
+import static main.TreeAssertions.assertSameTree;
+import static main.TreeAssertions.build;
+import static main.TreeAssertions.datasets;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import main.DecisionTree.eSplitEngine;
+import weka.core.Instances;
+
+
+/**
+ * Checks that the bitmap split engine builds the same tree as the row
+ * scans.
+ */
+class BitmapEngineTest {
+
+	@ParameterizedTest
+	@EnumSource(eImpurityMode.class)
+	void bitmapEngineMatchesRowScans(eImpurityMode impurityMode) throws Exception {
+		for (Instances[] dataset : datasets()) {
+			DecisionTree decisionTree = new DecisionTree(impurityMode, ePruningMode.None);
+			decisionTree.setSplitEngine(eSplitEngine.Bitmap);
+			decisionTree.buildClassifier(dataset[0]);
+
+			assertSameTree(build(impurityMode, dataset[0]), decisionTree, dataset[1]);
+		}
+	}
+}
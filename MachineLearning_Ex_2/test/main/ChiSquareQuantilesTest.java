@@ -0,0 +1,43 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+
+
+/**
+ * Checks the calculated critical values against the table of MainHW2, and
+ * that a tree without pruning needs no table.
+ */
+class ChiSquareQuantilesTest {
+
+	@Test
+	void criticalValuesMatchTheTable() {
+		double[][] table = MainHW2.TABLE_OF_CHISQUARED_PROBABILITIES;
+
+		for (int PValueIndex = 0; PValueIndex < MainHW2.P_VALUES.length; PValueIndex++) {
+			ChiSquareQuantiles quantiles = ChiSquareQuantiles.forTableColumn(table, PValueIndex);
+
+			assertSame(quantiles, ChiSquareQuantiles.forTableColumn(table, PValueIndex));
+
+			for (int degOfFreedom = 1; degOfFreedom <= table.length; degOfFreedom++) {
+				// The table is rounded to three decimals.
+				assertEquals(table[degOfFreedom - 1][PValueIndex], quantiles.criticalValue(degOfFreedom), 0.01,
+						"p-value " + MainHW2.P_VALUES[PValueIndex] + ", degree of freedom " + degOfFreedom);
+			}
+		}
+	}
+
+
+	@Test
+	void unprunedTreeNeedsNoTable() throws Exception {
+		DecisionTree decisionTree = new DecisionTree(eImpurityMode.Entropy, ePruningMode.None, null, 0);
+		decisionTree.buildClassifier(TestDatasets.generate(500, false, 13));
+
+		assertEquals(Double.NaN, decisionTree.getPValue());
+	}
+}
@@ -0,0 +1,52 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Checks that the cross validation quantizes the numeric attributes of
+ * every fold by its training rows only, so that every fold scores the tree
+ * that a build on the training rows of the fold builds.
+ */
+class CrossValidationTest {
+
+	@Test
+	void foldsAreBinnedByTheirTrainingRows() throws Exception {
+		Instances instances = TestDatasets.generate(3000, true, 5);
+		CrossValidation crossValidation = new CrossValidation();
+		crossValidation.setNumFolds(5);
+
+		List<TuningResult> results = crossValidation.gridSearch(instances,
+				new eImpurityMode[] {eImpurityMode.Entropy}, new double[0]);
+
+		assertEquals(ePruningMode.None, results.get(0).getPruningMode());
+
+		int[] foldStarts = new int[crossValidation.getNumFolds() + 1];
+		int[] shuffledRows = crossValidation.shuffleRows(new EncodedDataset(instances), foldStarts);
+		double[] foldErrors = results.get(0).getFoldErrors();
+
+		for (int fold = 0; fold < crossValidation.getNumFolds(); fold++) {
+			Instances trainingInstances = new Instances(instances, 0);
+			Instances testInstances = new Instances(instances, 0);
+
+			for (int position = 0; position < shuffledRows.length; position++) {
+				boolean isTest = position >= foldStarts[fold] && position < foldStarts[fold + 1];
+
+				(isTest ? testInstances : trainingInstances).add(instances.instance(shuffledRows[position]));
+			}
+
+			DecisionTree tree = new DecisionTree(eImpurityMode.Entropy, ePruningMode.None);
+			tree.buildClassifier(trainingInstances);
+
+			assertEquals(tree.evaluate(testInstances).getErrorRate(), foldErrors[fold], 1e-12, "fold " + fold);
+		}
+	}
+}
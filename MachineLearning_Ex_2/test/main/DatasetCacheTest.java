@@ -0,0 +1,188 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Checks that the dataset cache loads the encoding of the ARFF file, keeps
+ * its files in the cache directory only, and rebuilds a stale or broken
+ * cache file.
+ */
+class DatasetCacheTest {
+
+	@TempDir
+	Path directory;
+
+
+	@Test
+	void cachedLoadsGiveTheEncodingOfTheFile() throws Exception {
+		Instances instances = withMissingClasses(TestDatasets.generate(500, false, 5));
+		File arffFile = this.writeArff("nominal.arff", instances);
+		DatasetCache datasetCache = this.newCache();
+		File cacheFile = datasetCache.cacheFileOf(arffFile);
+
+		assertSameEncoding(new EncodedDataset(instances), datasetCache.load(arffFile.getPath()));
+		assertTrue(cacheFile.exists());
+
+		// The second load reads the cache file.
+		long cacheModified = cacheFile.lastModified();
+		assertSameEncoding(new EncodedDataset(instances), datasetCache.load(arffFile.getPath()));
+		assertEquals(cacheModified, cacheFile.lastModified());
+
+		// Nothing is written next to the ARFF file.
+		assertArrayEquals(new String[] {arffFile.getName()}, arffFile.getParentFile().list());
+	}
+
+
+	@Test
+	void plainLoadWritesNoCache() throws Exception {
+		Instances instances = TestDatasets.generate(500, false, 14);
+		File arffFile = this.writeArff("plain.arff", instances);
+
+		assertEquals(instances.toString(), MainHW2.loadData(arffFile.getPath()).toString());
+		assertArrayEquals(new String[] {arffFile.getName()}, arffFile.getParentFile().list());
+	}
+
+
+	@Test
+	void changedFileIsLoadedAgain() throws Exception {
+		File arffFile = this.writeArff("changed.arff", TestDatasets.generate(500, false, 6));
+		DatasetCache datasetCache = this.newCache();
+		datasetCache.load(arffFile.getPath());
+
+		Instances instances = TestDatasets.generate(400, false, 7);
+		this.writeArff("changed.arff", instances);
+
+		assertSameEncoding(new EncodedDataset(instances), datasetCache.load(arffFile.getPath()));
+	}
+
+
+	@Test
+	void truncatedCacheFileIsRebuilt() throws Exception {
+		Instances instances = TestDatasets.generate(500, false, 8);
+		File arffFile = this.writeArff("truncated.arff", instances);
+		DatasetCache datasetCache = this.newCache();
+		File cacheFile = datasetCache.cacheFileOf(arffFile);
+		datasetCache.load(arffFile.getPath());
+
+		long cacheLength = cacheFile.length();
+
+		try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+			file.setLength(cacheLength / 2);
+		}
+
+		assertSameEncoding(new EncodedDataset(instances), datasetCache.load(arffFile.getPath()));
+		assertEquals(cacheLength, cacheFile.length());
+
+		try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+			file.setLength(10);
+		}
+
+		assertSameEncoding(new EncodedDataset(instances), datasetCache.load(arffFile.getPath()));
+		assertEquals(cacheLength, cacheFile.length());
+	}
+
+
+	@Test
+	void numericDatasetIsNotCached() throws Exception {
+		Instances instances = TestDatasets.generate(500, true, 9);
+		File arffFile = this.writeArff("numeric.arff", instances);
+		DatasetCache datasetCache = this.newCache();
+
+		assertSameEncoding(new EncodedDataset(MainHW2.loadData(arffFile.getPath())),
+				datasetCache.load(arffFile.getPath()));
+		assertFalse(datasetCache.cacheFileOf(arffFile).exists());
+	}
+
+
+	@Test
+	void encodedDatasetBuildsTheTreeOfTheInstances() throws Exception {
+		Instances instances = withMissingClasses(TestDatasets.generate(3000, false, 10));
+		File arffFile = this.writeArff("encoded.arff", instances);
+		DatasetCache datasetCache = this.newCache();
+		datasetCache.load(arffFile.getPath());
+
+		DecisionTree expected = new DecisionTree(eImpurityMode.Entropy, ePruningMode.None);
+		expected.buildClassifier(instances);
+
+		DecisionTree actual = new DecisionTree(eImpurityMode.Entropy, ePruningMode.None);
+		actual.buildClassifier(MainHW2.loadEncodedData(arffFile.getPath(), datasetCache.getCacheDirectory()));
+
+		for (int i = 0; i < instances.numInstances(); i++) {
+			assertArrayEquals(expected.distributionForInstance(instances.instance(i)),
+					actual.distributionForInstance(instances.instance(i)), "Distribution of instance " + i);
+		}
+	}
+
+
+	/**
+	 * Check that two encoded datasets have the same rows, in the same order.
+	 */
+	private static void assertSameEncoding(EncodedDataset expected, EncodedDataset actual) {
+		assertEquals(expected.numRows, actual.numRows, "number of rows");
+		assertArrayEquals(expected.numValues, actual.numValues, "number of values");
+
+		for (int position = 0; position < expected.numRows; position++) {
+			int expectedRow = expected.rows[position];
+			int actualRow = actual.rows[position];
+
+			assertEquals(expected.classColumn[expectedRow], actual.classColumn[actualRow], "class of row " + position);
+
+			for (int attributeIndex = 0; attributeIndex < expected.columns.length; attributeIndex++) {
+				if (expected.columns[attributeIndex] != null) {
+					assertEquals(expected.columns[attributeIndex][expectedRow],
+							actual.columns[attributeIndex][actualRow], "attribute " + attributeIndex + " of row " + position);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Make the class of every tenth instance missing.
+	 */
+	private static Instances withMissingClasses(Instances instances) {
+		for (int i = 0; i < instances.numInstances(); i += 10) {
+			instances.instance(i).setClassMissing();
+		}
+
+		return instances;
+	}
+
+
+	private DatasetCache newCache() {
+
+		return new DatasetCache(this.directory.resolve("cache").toFile());
+	}
+
+
+	private File writeArff(String fileName, Instances instances) throws IOException {
+		File dataDirectory = this.directory.resolve("data").toFile();
+		dataDirectory.mkdirs();
+
+		File arffFile = new File(dataDirectory, fileName);
+
+		try (Writer writer = new FileWriter(arffFile)) {
+			writer.write(instances.toString());
+		}
+
+		return arffFile;
+	}
+}
@@ -0,0 +1,36 @@
+package main;
+
+import static main.TreeAssertions.assertSameTree;
+import static main.TreeAssertions.build;
+import static main.TreeAssertions.datasets;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import main.DecisionTree.eBuildMode;
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Checks that a build over deduplicated, weighted rows builds the same
+ * tree as a build over all of the rows, in every build mode.
+ */
+class DeduplicationTest {
+
+	@ParameterizedTest
+	@EnumSource(eImpurityMode.class)
+	void deduplicatedBuildMatchesBuild(eImpurityMode impurityMode) throws Exception {
+		for (Instances[] dataset : datasets()) {
+			for (eBuildMode buildMode : eBuildMode.values()) {
+				DecisionTree decisionTree = new DecisionTree(impurityMode, ePruningMode.None);
+				decisionTree.setDeduplicateRows(true);
+				decisionTree.setBuildMode(buildMode);
+				decisionTree.buildClassifier(dataset[0]);
+
+				assertSameTree(build(impurityMode, dataset[0]), decisionTree, dataset[1]);
+			}
+		}
+	}
+}
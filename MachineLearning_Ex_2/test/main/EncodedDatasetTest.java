@@ -0,0 +1,38 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+
+/**
+ * Checks that the encoding rejects a nominal attribute whose value indexes
+ * don't fit in a short, instead of wrapping them around.
+ */
+class EncodedDatasetTest {
+
+	@Test
+	void rejectsTooManyNominalValues() {
+		ArrayList<String> values = new ArrayList<String>();
+
+		for (int value = 0; value <= EncodedDataset.MAX_NUM_VALUES; value++) {
+			values.add("v" + value);
+		}
+
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(new Attribute("wide", values));
+		attributes.add(new Attribute("class", values.subList(0, 2)));
+
+		Instances instances = new Instances("wide", attributes, 0);
+		instances.setClassIndex(1);
+
+		assertThrows(IllegalArgumentException.class, () -> new EncodedDataset(instances));
+		assertThrows(IllegalArgumentException.class,
+				() -> new EncodedDataset(instances, new short[2][], new short[0]));
+	}
+}
@@ -0,0 +1,163 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instance;
+import weka.core.Instances;
+
+
+/**
+ * Checks that updates of a batch trained tree reach its classifications
+ * and probabilities, without compiling the tree again while its
+ * structure stays the same.
+ */
+class IncrementalTrainingTest {
+
+	@Test
+	void updateOfLeafChangesItsDistribution() throws Exception {
+		Instances trainingInstances = TestDatasets.generate(3000, false, 1);
+		DecisionTree decisionTree = trainWithoutSplits(trainingInstances);
+		Instance instance = trainingInstances.instance(0);
+		double[] trainedDistribution = decisionTree.distributionForInstance(instance);
+		int leastProbableClass = leastProbableClass(trainedDistribution);
+
+		Instance update = (Instance) instance.copy();
+		update.setClassValue(leastProbableClass);
+		decisionTree.updateClassifier(update);
+
+		double[] updatedDistribution = decisionTree.distributionForInstance(instance);
+		assertNotEquals(trainedDistribution[leastProbableClass], updatedDistribution[leastProbableClass]);
+		assertEquals(1, sum(updatedDistribution), 1e-12);
+
+		// The probabilities follow the counts of the leaf.
+		int[] classCounts = leafOf(decisionTree.getRoot(), instance).classCounts;
+		double numInstances = sum(classCounts);
+
+		for (int classIndex = 0; classIndex < classCounts.length; classIndex++) {
+			assertEquals(classCounts[classIndex] / numInstances, updatedDistribution[classIndex], 1e-12);
+		}
+	}
+
+
+	@Test
+	void updatesChangeClassificationInPlace() throws Exception {
+		Instances trainingInstances = TestDatasets.generate(3000, false, 2);
+		DecisionTree decisionTree = trainWithoutSplits(trainingInstances);
+		Instance instance = trainingInstances.instance(0);
+		int leastProbableClass = leastProbableClass(decisionTree.distributionForInstance(instance));
+		CompiledTree compiledTree = decisionTree.getCompiledTree();
+
+		Instance update = (Instance) instance.copy();
+		update.setClassValue(leastProbableClass);
+
+		for (int i = 0; i < trainingInstances.numInstances(); i++) {
+			decisionTree.updateClassifier(update);
+		}
+
+		assertEquals(leastProbableClass, decisionTree.classifyInstance(instance));
+		assertEquals(leastProbableClass, decisionTree.predict(instance).getClassValue());
+		assertSame(compiledTree, decisionTree.getCompiledTree());
+
+		// The patched compiled tree is the compiled form of the updated tree.
+		CompiledTree recompiledTree = new CompiledTree(decisionTree.getRoot());
+
+		for (int i = 0; i < trainingInstances.numInstances(); i++) {
+			Instance testInstance = trainingInstances.instance(i);
+
+			assertEquals(recompiledTree.classifyInstance(testInstance), decisionTree.classifyInstance(testInstance));
+			assertArrayEquals(recompiledTree.classCounts[recompiledTree.findNode(testInstance)],
+					compiledTree.classCounts[compiledTree.findNode(testInstance)]);
+		}
+	}
+
+
+	@Test
+	void publishedCountsAreNotChangedByLaterUpdates() throws Exception {
+		Instances trainingInstances = TestDatasets.generate(3000, false, 3);
+		DecisionTree decisionTree = trainWithoutSplits(trainingInstances);
+		Instance instance = trainingInstances.instance(0);
+		CompiledTree compiledTree = decisionTree.getCompiledTree();
+		int node = compiledTree.findNode(instance);
+
+		decisionTree.updateClassifier(instance);
+
+		int[] publishedCounts = compiledTree.classCounts(node);
+		int[] expectedCounts = publishedCounts.clone();
+
+		decisionTree.updateClassifier(instance);
+
+		// A thread that read the counts keeps a row that stays the same.
+		assertArrayEquals(expectedCounts, publishedCounts);
+		assertEquals(sum(expectedCounts) + 1, sum(compiledTree.classCounts(node)));
+	}
+
+
+	/**
+	 * Train a tree whose leaves are not split by updates, so that only
+	 * their counts change.
+	 */
+	private static DecisionTree trainWithoutSplits(Instances trainingInstances) throws Exception {
+		DecisionTree decisionTree = new DecisionTree(eImpurityMode.Entropy, ePruningMode.None);
+		decisionTree.setGracePeriod(Integer.MAX_VALUE);
+		decisionTree.buildClassifier(trainingInstances);
+
+		return decisionTree;
+	}
+
+
+	private static Node leafOf(Node node, Instance instance) {
+		while (node.children != null) {
+			Node parentNode = node;
+
+			for (Node childNode : parentNode.children) {
+				if (Double.compare(childNode.branch, instance.value(parentNode.attributeIndex)) == 0) {
+					node = childNode;
+				}
+			}
+		}
+
+		return node;
+	}
+
+
+	private static int leastProbableClass(double[] distribution) {
+		int leastProbableClass = 0;
+
+		for (int classIndex = 1; classIndex < distribution.length; classIndex++) {
+			if (distribution[classIndex] < distribution[leastProbableClass]) {
+				leastProbableClass = classIndex;
+			}
+		}
+
+		return leastProbableClass;
+	}
+
+
+	private static double sum(double[] values) {
+		double sum = 0;
+
+		for (double value : values) {
+			sum += value;
+		}
+
+		return sum;
+	}
+
+
+	private static double sum(int[] values) {
+		double sum = 0;
+
+		for (int value : values) {
+			sum += value;
+		}
+
+		return sum;
+	}
+}
@@ -0,0 +1,47 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Checks that a tree saved in the model file format is classified from the
+ * mapped file like the tree, with the same depths.
+ */
+class MappedTreeModelTest {
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	void mappedModelClassifiesLikeTheTree(boolean withNumeric, @TempDir Path directory) throws Exception {
+		Instances trainingInstances = TestDatasets.generate(6000, withNumeric, 15);
+		Instances testingInstances = TestDatasets.generate(2000, withNumeric, 16);
+
+		DecisionTree decisionTree = new DecisionTree(eImpurityMode.Gini, ePruningMode.None);
+		decisionTree.buildClassifier(trainingInstances);
+
+		File modelFile = directory.resolve("tree.model").toFile();
+		decisionTree.saveModel(modelFile.getPath());
+		MappedTreeModel model = MappedTreeModel.load(modelFile.getPath());
+
+		assertEquals(decisionTree.getCompiledTree().attributeIndexes.length, model.getNumNodes());
+		assertEquals(decisionTree.getCompiledTree().maxDepth, model.getMaxDepth());
+
+		for (int i = 0; i < testingInstances.numInstances(); i++) {
+			Prediction expected = decisionTree.predict(testingInstances.instance(i));
+			Prediction actual = model.predict(testingInstances.instance(i));
+
+			assertEquals(expected.getClassValue(), actual.getClassValue(), "Classification of instance " + i);
+			assertEquals(expected.getDepth(), actual.getDepth(), "Depth of instance " + i);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package main;
+
+import static main.TreeAssertions.assertSameTree;
+import static main.TreeAssertions.build;
+import static main.TreeAssertions.datasets;
+import static main.TreeAssertions.read;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import main.DecisionTree.eBuildMode;
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import main.DecisionTree.eSplitEngine;
+import weka.core.Instances;
+
+
+/**
+ * Checks that a build from an ARFF file through spill files builds the
+ * same tree as a build in memory, with the build settings of the tree,
+ * and leaves no spill file behind.
+ */
+class OutOfCoreBuildTest {
+
+	@ParameterizedTest
+	@EnumSource(eImpurityMode.class)
+	void outOfCoreBuildMatchesInMemoryBuild(eImpurityMode impurityMode, @TempDir Path directory) throws Exception {
+		for (Instances[] dataset : datasets()) {
+			// The ARFF text may round the values, so the expected tree is
+			// built from the instances of the file.
+			File arffFile = directory.resolve(dataset[0].numInstances() + "-" + impurityMode + ".arff").toFile();
+
+			try (Writer writer = new FileWriter(arffFile)) {
+				writer.write(dataset[0].toString());
+			}
+
+			DecisionTree expected = build(impurityMode, read(arffFile));
+
+			// The nodes that fit the memory are built with the settings
+			// of the tree.
+			for (DecisionTree decisionTree : buildSettings(impurityMode)) {
+				File spillDirectory = directory.resolve("spill-" + arffFile.getName()).toFile();
+				spillDirectory.mkdir();
+
+				decisionTree.setMaxRowsInMemory(500);
+				decisionTree.setSpillDirectory(spillDirectory);
+				decisionTree.buildClassifier(arffFile);
+
+				assertSameTree(expected, decisionTree, dataset[1]);
+				assertArrayEquals(new String[0], spillDirectory.list(), "Spill files left behind");
+			}
+		}
+	}
+
+
+	/**
+	 * @return unbuilt trees of the default settings, the queue build mode,
+	 * the bitmap engine, and a parallel build
+	 */
+	private static DecisionTree[] buildSettings(eImpurityMode impurityMode) {
+		DecisionTree[] decisionTrees = new DecisionTree[4];
+
+		for (int i = 0; i < decisionTrees.length; i++) {
+			decisionTrees[i] = new DecisionTree(impurityMode, ePruningMode.None);
+		}
+
+		decisionTrees[1].setBuildMode(eBuildMode.Queue);
+		decisionTrees[2].setSplitEngine(eSplitEngine.Bitmap);
+		decisionTrees[3].setParallelism(4);
+		decisionTrees[3].setMinRowsForParallelSubtree(100);
+
+		return decisionTrees;
+	}
+}
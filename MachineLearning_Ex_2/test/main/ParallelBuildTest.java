@@ -0,0 +1,33 @@
+package main;
+
+import static main.TreeAssertions.assertSameTree;
+import static main.TreeAssertions.build;
+import static main.TreeAssertions.datasets;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Checks that a build of subtrees as fork join tasks builds the same tree
+ * as the sequential build.
+ */
+class ParallelBuildTest {
+
+	@ParameterizedTest
+	@EnumSource(eImpurityMode.class)
+	void parallelBuildMatchesSequentialBuild(eImpurityMode impurityMode) throws Exception {
+		for (Instances[] dataset : datasets()) {
+			DecisionTree decisionTree = new DecisionTree(impurityMode, ePruningMode.None);
+			decisionTree.setParallelism(4);
+			decisionTree.setMinRowsForParallelSubtree(100);
+			decisionTree.buildClassifier(dataset[0]);
+
+			assertSameTree(build(impurityMode, dataset[0]), decisionTree, dataset[1]);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package main;
+
+import static main.TreeAssertions.assertSameTree;
+import static main.TreeAssertions.build;
+import static main.TreeAssertions.datasets;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Checks that a chi pruned view of an unpruned tree is the tree that a
+ * chi pruned build builds, for every p-value.
+ */
+class PrunedViewTest {
+
+	@ParameterizedTest
+	@EnumSource(eImpurityMode.class)
+	void prunedViewMatchesPrunedBuild(eImpurityMode impurityMode) throws Exception {
+		for (Instances[] dataset : datasets()) {
+			DecisionTree unprunedTree = build(impurityMode, dataset[0]);
+
+			for (int PValueIndex = 0; PValueIndex < MainHW2.P_VALUES.length; PValueIndex++) {
+				DecisionTree prunedTree = new DecisionTree(impurityMode, ePruningMode.Chi,
+						MainHW2.TABLE_OF_CHISQUARED_PROBABILITIES, PValueIndex);
+				prunedTree.buildClassifier(dataset[0]);
+
+				assertSameTree(prunedTree,
+						unprunedTree.prunedView(MainHW2.TABLE_OF_CHISQUARED_PROBABILITIES, PValueIndex), dataset[1]);
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package main;
+
+import static main.TreeAssertions.assertSameTree;
+import static main.TreeAssertions.build;
+import static main.TreeAssertions.datasets;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import main.DecisionTree.eBuildMode;
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Checks that the level-wise queue build builds the same tree as the
+ * recursive build, and leaves a tree with random attributes to it.
+ */
+class QueueBuildTest {
+
+	@ParameterizedTest
+	@EnumSource(eImpurityMode.class)
+	void queueBuildMatchesRecursiveBuild(eImpurityMode impurityMode) throws Exception {
+		for (Instances[] dataset : datasets()) {
+			DecisionTree decisionTree = new DecisionTree(impurityMode, ePruningMode.None);
+			decisionTree.setBuildMode(eBuildMode.Queue);
+			decisionTree.buildClassifier(dataset[0]);
+
+			assertSameTree(build(impurityMode, dataset[0]), decisionTree, dataset[1]);
+		}
+	}
+
+
+	@ParameterizedTest
+	@EnumSource(eImpurityMode.class)
+	void queueBuildWithRandomAttributesIsRecursive(eImpurityMode impurityMode) throws Exception {
+		for (Instances[] dataset : datasets()) {
+			DecisionTree recursiveTree = new DecisionTree(impurityMode, ePruningMode.None);
+			recursiveTree.setNumRandomAttributes(3);
+			recursiveTree.buildClassifier(dataset[0]);
+
+			DecisionTree queueTree = new DecisionTree(impurityMode, ePruningMode.None);
+			queueTree.setNumRandomAttributes(3);
+			queueTree.setBuildMode(eBuildMode.Queue);
+			queueTree.buildClassifier(dataset[0]);
+
+			assertSameTree(recursiveTree, queueTree, dataset[1]);
+		}
+	}
+}
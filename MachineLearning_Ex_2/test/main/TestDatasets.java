@@ -0,0 +1,85 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+
+/**
+ * Generates the fixed datasets of the tests, reproducibly from a seed.
+ * The attributes have different cardinalities and some missing values,
+ * so the trees have missing branches and many repeated rows, and the class
+ * depends on a few attributes with some noise, so the trees are deep
+ * enough to split nodes of every size.
+ */
+final class TestDatasets {
+
+	private TestDatasets() {
+	}
+
+
+	/**
+	 * Generate a dataset with a three valued class as the last attribute.
+	 * @param numRows
+	 * @param withNumeric - whether the first attribute is numeric, instead of nominal
+	 * @param seed
+	 * @return instances with the class index set
+	 */
+	static Instances generate(int numRows, boolean withNumeric, long seed) {
+		int[] cardinalities = {4, 2, 3, 5, 2, 3, 4};
+		Random random = new Random(seed);
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+
+		for (int attributeIndex = 0; attributeIndex < cardinalities.length; attributeIndex++) {
+			attributes.add(attributeIndex == 0 && withNumeric ? new Attribute("n0") :
+					new Attribute("a" + attributeIndex, values("v", cardinalities[attributeIndex])));
+		}
+
+		attributes.add(new Attribute("class", values("c", 3)));
+
+		Instances instances = new Instances("test", attributes, numRows);
+		instances.setClassIndex(cardinalities.length);
+
+		for (int i = 0; i < numRows; i++) {
+			double[] values = new double[cardinalities.length + 1];
+
+			for (int attributeIndex = 0; attributeIndex < cardinalities.length; attributeIndex++) {
+				values[attributeIndex] = attributeIndex == 0 && withNumeric ?
+						Math.round(random.nextGaussian() * 100) / 10.0 : random.nextInt(cardinalities[attributeIndex]);
+
+				if (attributeIndex >= 5 && random.nextDouble() < 0.1) {
+					values[attributeIndex] = Utils.missingValue();
+				}
+			}
+
+			// The class follows the first attributes, and is random for 15%
+			// of the rows.
+			int first = withNumeric ? (values[0] < -2 ? 0 : values[0] < 3 ? 1 : 2) : (int) values[0];
+			int classValue = (first + (int) values[1] * (int) values[2]) % 3;
+
+			if (random.nextDouble() < 0.15) {
+				classValue = random.nextInt(3);
+			}
+
+			values[cardinalities.length] = classValue;
+			instances.add(new DenseInstance(1.0, values));
+		}
+
+		return instances;
+	}
+
+
+	private static ArrayList<String> values(String prefix, int numValues) {
+		ArrayList<String> values = new ArrayList<String>();
+
+		for (int i = 0; i < numValues; i++) {
+			values.add(prefix + i);
+		}
+
+		return values;
+	}
+}
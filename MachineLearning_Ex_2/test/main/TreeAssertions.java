@@ -0,0 +1,98 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Builds the default tree of the fixed test datasets, and checks that
+ * another tree is the same, node for node, and classifies the same. The
+ * default tree is built recursively with row scans, on one thread.
+ */
+final class TreeAssertions {
+	private static final Instances NOMINAL_TRAINING = TestDatasets.generate(6000, false, 1);
+	private static final Instances NOMINAL_TESTING = TestDatasets.generate(2000, false, 2);
+	private static final Instances NUMERIC_TRAINING = TestDatasets.generate(6000, true, 3);
+	private static final Instances NUMERIC_TESTING = TestDatasets.generate(2000, true, 4);
+
+	private TreeAssertions() {
+	}
+
+
+	/**
+	 * @return every training set with its testing set, one with nominal
+	 * attributes only and one with a numeric attribute
+	 */
+	static Instances[][] datasets() {
+		return new Instances[][] {
+			{NOMINAL_TRAINING, NOMINAL_TESTING},
+			{NUMERIC_TRAINING, NUMERIC_TESTING}
+		};
+	}
+
+
+	/**
+	 * Build a tree the default way.
+	 */
+	static DecisionTree build(eImpurityMode impurityMode, Instances trainingInstances) throws Exception {
+		DecisionTree decisionTree = new DecisionTree(impurityMode, ePruningMode.None);
+		decisionTree.buildClassifier(trainingInstances);
+
+		return decisionTree;
+	}
+
+
+	static Instances read(File arffFile) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new FileReader(arffFile))) {
+			Instances instances = new Instances(reader);
+			instances.setClassIndex(instances.numAttributes() - 1);
+
+			return instances;
+		}
+	}
+
+
+	/**
+	 * Check that two trees have the same nodes, and classify the testing
+	 * instances the same, with the same probabilities.
+	 */
+	static void assertSameTree(DecisionTree expected, DecisionTree actual, Instances testingInstances) {
+		assertSameNode(expected.getRoot(), actual.getRoot(), "root");
+
+		for (int i = 0; i < testingInstances.numInstances(); i++) {
+			assertEquals(expected.classifyInstance(testingInstances.instance(i)),
+					actual.classifyInstance(testingInstances.instance(i)), "Classification of instance " + i);
+			assertArrayEquals(expected.distributionForInstance(testingInstances.instance(i)),
+					actual.distributionForInstance(testingInstances.instance(i)), "Distribution of instance " + i);
+		}
+	}
+
+
+	private static void assertSameNode(Node expected, Node actual, String path) {
+		assertEquals(expected.returnValue, actual.returnValue, path + ": return value");
+		assertArrayEquals(expected.classCounts, actual.classCounts, path + ": class counts");
+		assertEquals(expected.children == null, actual.children == null, path + ": is a leaf");
+
+		if (expected.children == null) {
+			return;
+		}
+
+		assertEquals(expected.attributeIndex, actual.attributeIndex, path + ": split attribute");
+		assertEquals(expected.threshold, actual.threshold, path + ": split threshold");
+		assertEquals(expected.children.length, actual.children.length, path + ": number of children");
+
+		for (int i = 0; i < expected.children.length; i++) {
+			assertEquals(expected.children[i].branch, actual.children[i].branch, path + ": branch " + i);
+			assertSameNode(expected.children[i], actual.children[i], path + "/" + expected.children[i].branch);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import main.DecisionTree.eImpurityMode;
+import main.DecisionTree.ePruningMode;
+import weka.core.Instances;
+
+
+/**
+ * Checks that the class generated by TreeCompiler classifies like the tree,
+ * with the same depths, on nominal and numeric attributes with missing
+ * values.
+ */
+class TreeCompilerTest {
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	void generatedPredictorClassifiesLikeTheTree(boolean withNumeric) throws Exception {
+		Instances trainingInstances = TestDatasets.generate(6000, withNumeric, 11);
+		Instances testingInstances = TestDatasets.generate(2000, withNumeric, 12);
+
+		DecisionTree decisionTree = new DecisionTree(eImpurityMode.Entropy, ePruningMode.None);
+		decisionTree.buildClassifier(trainingInstances);
+
+		TreePredictor generatedPredictor = TreeCompiler.compile(decisionTree);
+		assertNotSame(decisionTree.getCompiledTree(), generatedPredictor, "The tree was not compiled");
+
+		for (int i = 0; i < testingInstances.numInstances(); i++) {
+			Prediction expected = decisionTree.predict(testingInstances.instance(i));
+			Prediction actual = generatedPredictor.predict(testingInstances.instance(i));
+
+			assertEquals(expected.getClassValue(), actual.getClassValue(), "Classification of instance " + i);
+			assertEquals(expected.getDepth(), actual.getDepth(), "Depth of instance " + i);
+		}
+	}
+}